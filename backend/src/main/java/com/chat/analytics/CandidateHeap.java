@@ -0,0 +1,115 @@
+package com.chat.analytics;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The strongest keys seen in one bucket, at most limit of them, in a min-heap on their
+// estimate so the weakest sits at the root. A new key only has to beat the root to get in
+// and replaces it in O(log limit), as in Space-Saving, with the bucket's count-min estimate
+// standing in for the counter. Almost every offer is for a key that is already tracked at
+// that estimate or too weak to enter, and both checks read volatile state without locking.
+// The heap itself changes under tryLock; an offer that finds it busy is dropped, which is
+// safe because estimates only grow within a bucket and a heavy hitter keeps arriving.
+class CandidateHeap {
+
+    private static final class Node {
+        private final String key;
+        private volatile long estimate;
+        private int index;
+
+        Node(String key, long estimate) {
+            this.key = key;
+            this.estimate = estimate;
+        }
+    }
+
+    private final Node[] heap;
+    private final Map<String, Node> tracked = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private int size;
+    // Estimate a new key has to exceed; -1 while there is still room
+    private volatile long admission = -1;
+
+    CandidateHeap(int limit) {
+        this.heap = new Node[Math.max(1, limit)];
+    }
+
+    void offer(String key, long estimate) {
+        Node node = tracked.get(key);
+        if (node != null ? estimate <= node.estimate : estimate <= admission) {
+            return;
+        }
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            node = tracked.get(key);
+            if (node != null) {
+                if (estimate > node.estimate) {
+                    node.estimate = estimate;
+                    siftDown(node.index);
+                }
+            } else if (size < heap.length) {
+                place(new Node(key, estimate), size++);
+                siftUp(size - 1);
+            } else if (estimate > heap[0].estimate) {
+                tracked.remove(heap[0].key);
+                place(new Node(key, estimate), 0);
+                siftDown(0);
+            }
+            admission = size < heap.length ? -1 : heap[0].estimate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Set<String> keys() {
+        return Set.copyOf(tracked.keySet());
+    }
+
+    private void place(Node node, int index) {
+        heap[index] = node;
+        node.index = index;
+        tracked.put(node.key, node);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].estimate <= heap[index].estimate) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && heap[left].estimate < heap[smallest].estimate) {
+                smallest = left;
+            }
+            if (right < size && heap[right].estimate < heap[smallest].estimate) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        Node node = heap[a];
+        heap[a] = heap[b];
+        heap[b] = node;
+        heap[a].index = a;
+        heap[b].index = b;
+    }
+}
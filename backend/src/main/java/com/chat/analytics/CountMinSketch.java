@@ -0,0 +1,52 @@
+package com.chat.analytics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Fixed-size frequency sketch: depth rows of width counters. Estimates may overcount (by
+// roughly total/width with high probability) but never undercount. Counters are atomic, so
+// any number of threads can add without a lock.
+class CountMinSketch {
+
+    private final AtomicLongArray counts;
+    private final int width;
+    private final int depth;
+
+    CountMinSketch(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.counts = new AtomicLongArray(width * depth);
+    }
+
+    void add(long hash) {
+        for (int row = 0; row < depth; row++) {
+            counts.getAndIncrement(index(hash, row));
+        }
+    }
+
+    long estimate(long hash) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counts.get(index(hash, row)));
+        }
+        return min;
+    }
+
+    // Each row remixes the hash with its own seed, so two keys colliding in one row are no
+    // more likely to collide in the next. With h1 + row * h2, keys sharing both halves mod
+    // width collided in every row; at a million keys that gave cold keys hot-key estimates.
+    private int index(long hash, int row) {
+        long h = hash + row * 0x9e3779b97f4a7c15L;
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return row * width + Math.floorMod(h, width);
+    }
+
+    // 64-bit FNV-1a
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        return h ^ (h >>> 29);
+    }
+}
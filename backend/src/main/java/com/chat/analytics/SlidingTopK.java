@@ -0,0 +1,106 @@
+package com.chat.analytics;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Heavy hitters over a sliding window made of fixed time buckets. Each bucket holds a
+// count-min sketch plus a small candidate heap of the keys with the highest estimates in
+// that bucket; window counts are the sum over the live buckets. Memory depends only on the
+// bucket count, sketch size and candidate limit, never on the number of distinct keys.
+// Adds take no lock: counters are atomic, the total is a LongAdder, and a bucket is
+// replaced, not cleared, when its slot moves on to a new period.
+class SlidingTopK {
+
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final long bucketMillis;
+    private final int width;
+    private final int depth;
+    private final int candidateLimit;
+
+    SlidingTopK(int bucketCount, long bucketMillis, int width, int depth, int candidateLimit) {
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+        this.bucketMillis = bucketMillis;
+        this.width = width;
+        this.depth = depth;
+        this.candidateLimit = candidateLimit;
+    }
+
+    void add(String key, long now) {
+        Bucket bucket = bucketFor(now);
+        long hash = CountMinSketch.hash(key);
+        bucket.sketch().add(hash);
+        bucket.total().increment();
+        bucket.candidates().offer(key, bucket.sketch().estimate(hash));
+    }
+
+    long total(long now) {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (isLive(bucket, now)) {
+                total += bucket.total().sum();
+            }
+        }
+        return total;
+    }
+
+    long estimate(String key, long now) {
+        return estimate(CountMinSketch.hash(key), now);
+    }
+
+    // Keys that were a candidate in any live bucket, ranked by their windowed estimate
+    List<Map.Entry<String, Long>> top(int limit, long now) {
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (isLive(bucket, now)) {
+                keys.addAll(bucket.candidates().keys());
+            }
+        }
+        List<Map.Entry<String, Long>> ranked = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            ranked.add(Map.entry(key, estimate(CountMinSketch.hash(key), now)));
+        }
+        ranked.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return ranked.size() > limit ? ranked.subList(0, limit) : ranked;
+    }
+
+    private long estimate(long hash, long now) {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (isLive(bucket, now)) {
+                count += bucket.sketch().estimate(hash);
+            }
+        }
+        return count;
+    }
+
+    // The first add of a new period swaps in an empty bucket. Adds still holding the old one
+    // land in a period that has left the window, so no read counts them.
+    private Bucket bucketFor(long now) {
+        long epoch = now / bucketMillis;
+        int slot = (int) (epoch % buckets.length());
+        while (true) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket != null && bucket.epoch() >= epoch) {
+                return bucket;
+            }
+            Bucket fresh = new Bucket(epoch, new CountMinSketch(width, depth), new CandidateHeap(candidateLimit));
+            if (buckets.compareAndSet(slot, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private boolean isLive(Bucket bucket, long now) {
+        return bucket != null && now / bucketMillis - bucket.epoch() < buckets.length();
+    }
+
+    private record Bucket(long epoch, CountMinSketch sketch, CandidateHeap candidates, LongAdder total) {
+        Bucket(long epoch, CountMinSketch sketch, CandidateHeap candidates) {
+            this(epoch, sketch, candidates, new LongAdder());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.chat.analytics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+// Streaming view of which conversations and senders are busiest right now, fed from the
+// STOMP handlers. Message and typing rates are tracked per conversation and per sender with
+// fixed-memory sketches over a sliding window. hotConversationIds() is the signal other
+// components can use (e.g. to keep hot conversations pinned in a cache).
+@Component
+public class TrafficAnalytics {
+
+    public record HotKey(String key, long count, double perSecond) {
+    }
+
+    private static final long HOT_SET_REFRESH_MILLIS = 1000;
+
+    private final SlidingTopK conversationMessages;
+    private final SlidingTopK conversationTyping;
+    private final SlidingTopK senderMessages;
+    private final SlidingTopK senderTyping;
+    private final int topK;
+    private final double windowSeconds;
+
+    private volatile Set<String> hotConversations = Set.of();
+    private volatile long hotConversationsAt;
+
+    public TrafficAnalytics(MeterRegistry meterRegistry,
+                            @Value("${chat.analytics.bucket-seconds:10}") int bucketSeconds,
+                            @Value("${chat.analytics.bucket-count:6}") int bucketCount,
+                            @Value("${chat.analytics.sketch-width:2048}") int width,
+                            @Value("${chat.analytics.sketch-depth:4}") int depth,
+                            @Value("${chat.analytics.top-k:20}") int topK) {
+        long bucketMillis = bucketSeconds * 1000L;
+        // Track a few more candidates than reported so ranks near the cut-off stay stable
+        int candidates = topK * 4;
+        this.conversationMessages = new SlidingTopK(bucketCount, bucketMillis, width, depth, candidates);
+        this.conversationTyping = new SlidingTopK(bucketCount, bucketMillis, width, depth, candidates);
+        this.senderMessages = new SlidingTopK(bucketCount, bucketMillis, width, depth, candidates);
+        this.senderTyping = new SlidingTopK(bucketCount, bucketMillis, width, depth, candidates);
+        this.topK = topK;
+        this.windowSeconds = bucketSeconds * (double) bucketCount;
+
+        Gauge.builder("chat.analytics.message.rate", this, a -> a.rate(a.conversationMessages))
+                .baseUnit("messages/s")
+                .register(meterRegistry);
+        Gauge.builder("chat.analytics.typing.rate", this, a -> a.rate(a.conversationTyping))
+                .baseUnit("events/s")
+                .register(meterRegistry);
+        Gauge.builder("chat.analytics.hottest.conversation.rate", this, a -> a.hottestRate())
+                .baseUnit("messages/s")
+                .register(meterRegistry);
+    }
+
+    public void recordMessage(String conversationId, String senderId) {
+        long now = System.currentTimeMillis();
+        if (conversationId != null) {
+            conversationMessages.add(conversationId, now);
+        }
+        if (senderId != null) {
+            senderMessages.add(senderId, now);
+        }
+    }
+
+    public void recordTyping(String conversationId, String senderId) {
+        long now = System.currentTimeMillis();
+        if (conversationId != null) {
+            conversationTyping.add(conversationId, now);
+        }
+        if (senderId != null) {
+            senderTyping.add(senderId, now);
+        }
+    }
+
+    public List<HotKey> hotConversations(int limit) {
+        return top(conversationMessages, limit);
+    }
+
+    // Top-K conversations by message rate, recomputed at most once a second
+    public Set<String> hotConversationIds() {
+        long now = System.currentTimeMillis();
+        if (now - hotConversationsAt >= HOT_SET_REFRESH_MILLIS) {
+            Set<String> ids = new HashSet<>();
+            hotConversations(topK).forEach(hot -> ids.add(hot.key()));
+            hotConversations = Collections.unmodifiableSet(ids);
+            hotConversationsAt = now;
+        }
+        return hotConversations;
+    }
+
+    public boolean isHot(String conversationId) {
+        return hotConversationIds().contains(conversationId);
+    }
+
+    public Map<String, Object> snapshot(int limit) {
+        int capped = Math.min(Math.max(limit, 1), topK);
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("windowSeconds", windowSeconds);
+        snapshot.put("messageRate", rate(conversationMessages));
+        snapshot.put("typingRate", rate(conversationTyping));
+        snapshot.put("conversationsByMessages", top(conversationMessages, capped));
+        snapshot.put("conversationsByTyping", top(conversationTyping, capped));
+        snapshot.put("sendersByMessages", top(senderMessages, capped));
+        snapshot.put("sendersByTyping", top(senderTyping, capped));
+        return snapshot;
+    }
+
+    private List<HotKey> top(SlidingTopK sketch, int limit) {
+        List<HotKey> hot = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : sketch.top(limit, System.currentTimeMillis())) {
+            hot.add(new HotKey(entry.getKey(), entry.getValue(), entry.getValue() / windowSeconds));
+        }
+        return hot;
+    }
+
+    private double rate(SlidingTopK sketch) {
+        return sketch.total(System.currentTimeMillis()) / windowSeconds;
+    }
+
+    private double hottestRate() {
+        List<HotKey> hottest = hotConversations(1);
+        return hottest.isEmpty() ? 0 : hottest.get(0).perSecond();
+    }
+}
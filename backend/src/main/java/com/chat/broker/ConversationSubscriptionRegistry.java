@@ -0,0 +1,194 @@
+package com.chat.broker;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Subscription registry for the simple broker. Conversation topics are always exact
+// destinations, so they live in a concurrent hash map keyed by destination whose value is an
+// immutable subscriber snapshot, replaced on every change: lookups are a single get with no
+// locking and no pattern matching. Everything else (user queues, patterns, selectors) goes to
+// the default registry. The default registry is only consulted for a conversation topic when
+// it holds a subscription that could match one.
+public class ConversationSubscriptionRegistry implements SubscriptionRegistry {
+
+    private static final MultiValueMap<String, String> NO_SUBSCRIBERS = new LinkedMultiValueMap<>(0);
+
+    private final String exactPrefix;
+    private final SubscriptionRegistry fallback;
+    // The broker's settings, so a subscription is routed the way the fallback would read it;
+    // a null selector header means selectors are disabled
+    private final String selectorHeaderName;
+    private final PathMatcher pathMatcher;
+
+    // destination -> sessionId -> subscriptionIds; values are never mutated once published
+    private final Map<String, MultiValueMap<String, String>> exact = new ConcurrentHashMap<>();
+    // sessionId -> subscriptionId -> where it was registered, for unsubscribe and disconnect
+    private final Map<String, Map<String, Subscription>> sessions = new ConcurrentHashMap<>();
+    // Fallback subscriptions that could also match a conversation topic
+    private final AtomicInteger overlapping = new AtomicInteger();
+
+    // The same destination can be held by both registries (e.g. one subscription with a
+    // selector, one without), so removal follows the recorded choice, not the destination
+    private record Subscription(String destination, boolean exact) {
+    }
+
+    public ConversationSubscriptionRegistry(String exactPrefix, SubscriptionRegistry fallback) {
+        this(exactPrefix, fallback, "selector", new AntPathMatcher());
+    }
+
+    public ConversationSubscriptionRegistry(String exactPrefix, SubscriptionRegistry fallback,
+                                            String selectorHeaderName, PathMatcher pathMatcher) {
+        this.exactPrefix = exactPrefix;
+        this.fallback = fallback;
+        this.selectorHeaderName = selectorHeaderName;
+        this.pathMatcher = pathMatcher;
+    }
+
+    @Override
+    public void registerSubscription(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (sessionId == null || subscriptionId == null || destination == null) {
+            // Let the default registry report the malformed frame
+            fallback.registerSubscription(message);
+            return;
+        }
+
+        Subscription subscription = new Subscription(destination, isExact(destination, headers));
+        Subscription previous = sessions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                .put(subscriptionId, subscription);
+        if (previous != null) {
+            remove(sessionId, subscriptionId, previous, message);
+        }
+
+        if (subscription.exact()) {
+            exact.compute(destination, (d, current) -> withSubscriber(current, sessionId, subscriptionId));
+        } else {
+            if (overlaps(destination)) {
+                overlapping.incrementAndGet();
+            }
+            fallback.registerSubscription(message);
+        }
+    }
+
+    @Override
+    public void unregisterSubscription(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        Map<String, Subscription> subscriptions = sessionId != null ? sessions.get(sessionId) : null;
+        Subscription subscription = subscriptions != null && subscriptionId != null
+                ? subscriptions.remove(subscriptionId)
+                : null;
+        if (subscription == null) {
+            fallback.unregisterSubscription(message);
+            return;
+        }
+        remove(sessionId, subscriptionId, subscription, message);
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        Map<String, Subscription> subscriptions = sessions.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach((subscriptionId, subscription) -> {
+                if (subscription.exact()) {
+                    exact.computeIfPresent(subscription.destination(),
+                            (d, current) -> withoutSubscriber(current, sessionId, subscriptionId));
+                } else if (overlaps(subscription.destination())) {
+                    overlapping.decrementAndGet();
+                }
+            });
+        }
+        fallback.unregisterAllSubscriptions(sessionId);
+    }
+
+    @Override
+    public MultiValueMap<String, String> findSubscriptions(Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null || !destination.startsWith(exactPrefix)) {
+            return fallback.findSubscriptions(message);
+        }
+
+        MultiValueMap<String, String> direct = exact.getOrDefault(destination, NO_SUBSCRIBERS);
+        if (overlapping.get() == 0) {
+            return direct;
+        }
+        MultiValueMap<String, String> matched = fallback.findSubscriptions(message);
+        if (matched.isEmpty()) {
+            return direct;
+        }
+        MultiValueMap<String, String> merged = new LinkedMultiValueMap<>();
+        direct.forEach(merged::addAll);
+        matched.forEach(merged::addAll);
+        return merged;
+    }
+
+    private void remove(String sessionId, String subscriptionId, Subscription subscription, Message<?> message) {
+        if (subscription.exact()) {
+            exact.computeIfPresent(subscription.destination(),
+                    (d, current) -> withoutSubscriber(current, sessionId, subscriptionId));
+        } else {
+            if (overlaps(subscription.destination())) {
+                overlapping.decrementAndGet();
+            }
+            fallback.unregisterSubscription(message);
+        }
+    }
+
+    private boolean isExact(String destination, MessageHeaders headers) {
+        return destination.startsWith(exactPrefix)
+                && !pathMatcher.isPattern(destination)
+                && (selectorHeaderName == null
+                || SimpMessageHeaderAccessor.getFirstNativeHeader(selectorHeaderName, headers) == null);
+    }
+
+    private boolean overlaps(String destination) {
+        return destination.startsWith(exactPrefix) || pathMatcher.isPattern(destination);
+    }
+
+    // Copy-on-write: subscriber sets are small (one entry per open chat window), so copying
+    // on subscribe/unsubscribe is cheaper than synchronizing every broadcast
+    private static MultiValueMap<String, String> withSubscriber(MultiValueMap<String, String> current,
+                                                                String sessionId, String subscriptionId) {
+        MultiValueMap<String, String> copy = copyOf(current);
+        copy.add(sessionId, subscriptionId);
+        return copy;
+    }
+
+    private static MultiValueMap<String, String> withoutSubscriber(MultiValueMap<String, String> current,
+                                                                   String sessionId, String subscriptionId) {
+        MultiValueMap<String, String> copy = copyOf(current);
+        List<String> ids = copy.get(sessionId);
+        if (ids != null) {
+            ids.remove(subscriptionId);
+            if (ids.isEmpty()) {
+                copy.remove(sessionId);
+            }
+        }
+        // Returning null drops the destination once its last subscriber leaves
+        return copy.isEmpty() ? null : copy;
+    }
+
+    private static MultiValueMap<String, String> copyOf(MultiValueMap<String, String> current) {
+        MultiValueMap<String, String> copy = new LinkedMultiValueMap<>();
+        if (current != null) {
+            current.forEach((sessionId, ids) -> copy.put(sessionId, new ArrayList<>(ids)));
+        }
+        return copy;
+    }
+}
@@ -1,11 +1,18 @@
 package com.chat.config;
 
+import com.chat.broker.ConversationSubscriptionRegistry;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.*;
 
 @Configuration
 @EnableWebSocketMessageBroker
+@Profile("!reactive")
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
@@ -13,12 +20,35 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         config.enableSimpleBroker("/topic", "/queue");
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
+        // Deliver frames to each session in the order they were published
+        config.setPreservePublishOrder(true);
     }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
+        // Hand each session's inbound frames to the handlers in the order they were received
+        registry.setPreserveReceiveOrder(true);
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
+
+    // The broker registration has no hook for a custom subscription registry, so it is
+    // swapped in on the handler bean before the broker starts. The handler only applies its
+    // path matcher, cache limit and selector header to a DefaultSubscriptionRegistry, so the
+    // one it configured is kept as the fallback and its settings are shared with the wrapper.
+    @Bean
+    public static BeanPostProcessor conversationSubscriptionRegistryPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof SimpleBrokerMessageHandler broker
+                        && broker.getSubscriptionRegistry() instanceof DefaultSubscriptionRegistry configured) {
+                    broker.setSubscriptionRegistry(new ConversationSubscriptionRegistry("/topic/conversation.",
+                            configured, configured.getSelectorHeaderName(), configured.getPathMatcher()));
+                }
+                return bean;
+            }
+        };
+    }
 }
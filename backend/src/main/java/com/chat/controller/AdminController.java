@@ -0,0 +1,70 @@
+package com.chat.controller;
+
+import com.chat.analytics.TrafficAnalytics;
+import com.chat.retention.RetentionCompactor;
+import com.chat.service.InboxService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+@Slf4j
+public class AdminController {
+
+    private final RetentionCompactor retentionCompactor;
+    private final InboxService inboxService;
+    private final TrafficAnalytics trafficAnalytics;
+
+    // ==================== Retention ====================
+
+    @GetMapping("/retention")
+    public ResponseEntity<Map<String, Object>> getRetentionStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("running", retentionCompactor.isRunning());
+        status.put("current", retentionCompactor.getCurrent());
+        status.put("lastRun", retentionCompactor.getLastRun());
+        return ResponseEntity.ok(status);
+    }
+
+    // Dry run unless asked otherwise: a purge can't be undone
+    @PostMapping("/retention/run")
+    public ResponseEntity<Map<String, String>> runRetention(@RequestParam(defaultValue = "true") boolean dryRun) {
+        if (!retentionCompactor.trigger(dryRun)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "A retention run is already in progress"));
+        }
+        log.info("Triggered retention run (dryRun={})", dryRun);
+        return ResponseEntity.accepted().body(Map.of("status", "started"));
+    }
+
+    // ==================== Analytics ====================
+
+    @GetMapping("/analytics/hot")
+    public ResponseEntity<Map<String, Object>> getHotTraffic(@RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(trafficAnalytics.snapshot(limit));
+    }
+
+    // ==================== Inbox ====================
+
+    @GetMapping("/inbox/{userId}/check")
+    public ResponseEntity<Map<String, Object>> checkInbox(
+            @PathVariable String userId,
+            @RequestParam(defaultValue = "false") boolean repair) {
+        List<String> differences = inboxService.check(userId, repair);
+        if (!differences.isEmpty()) {
+            log.warn("Inbox for user {} has {} differences (repair={})", userId, differences.size(), repair);
+        }
+        return ResponseEntity.ok(Map.of(
+                "consistent", differences.isEmpty(),
+                "repaired", repair && !differences.isEmpty(),
+                "differences", differences));
+    }
+}
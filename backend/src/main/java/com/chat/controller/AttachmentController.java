@@ -0,0 +1,147 @@
+package com.chat.controller;
+
+import com.chat.model.AttachmentBlob;
+import com.chat.model.Message;
+import com.chat.service.AttachmentService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api")
+@Profile("!reactive")
+@RequiredArgsConstructor
+@Slf4j
+public class AttachmentController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final AttachmentService attachmentService;
+
+    // The raw request body is the file; it is streamed to disk, never read into memory
+    @PostMapping("/attachments")
+    public ResponseEntity<?> upload(
+            HttpServletRequest request,
+            @RequestParam String name,
+            @RequestParam(required = false) String uploaderId) {
+        try {
+            AttachmentBlob blob = attachmentService.store(
+                    request.getInputStream(), request.getContentType(), uploaderId);
+            log.info("Stored attachment {} ({} bytes)", blob.getId(), blob.getSize());
+            return ResponseEntity.ok(Message.Attachment.builder()
+                    .type(blob.getContentType())
+                    .url(AttachmentService.URL_PREFIX + blob.getId())
+                    .name(name)
+                    .size(blob.getSize())
+                    .build());
+        } catch (IOException | RuntimeException e) {
+            log.error("Error storing attachment: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    @GetMapping("/attachments/{hash}")
+    public void download(
+            @PathVariable String hash,
+            @RequestParam(required = false) String name,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        // Never let the browser second-guess the stored type into something executable
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        Optional<AttachmentBlob> found = attachmentService.find(hash);
+        if (found.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        AttachmentBlob blob = found.get();
+
+        // Content-addressed, so the hash is a strong validator and the content never changes
+        String etag = "\"" + blob.getId() + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (matchesEtag(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long size = blob.getSize();
+        long start = 0;
+        long end = size - 1;
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(etag))) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+                // Multipart byteranges aren't worth it here; serving the full body is allowed
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(size);
+                    end = ranges.get(0).getRangeEnd(size);
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+                }
+            } catch (IllegalArgumentException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+        }
+
+        response.setContentType(blob.getContentType());
+        AttachmentService.dispositionFor(blob, name).ifPresent(disposition ->
+                response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition.toString()));
+        response.setContentLengthLong(end - start + 1);
+        transfer(attachmentService.pathFor(blob.getId()), start, end + 1, request, response);
+    }
+
+    // Hands the file region to Tomcat's sendfile when the connector supports it; otherwise
+    // FileChannel.transferTo at least avoids staging the file through a heap buffer.
+    private void transfer(Path path, long start, long endExclusive,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().normalize().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, endExclusive);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             WritableByteChannel out = Channels.newChannel(response.getOutputStream())) {
+            long position = start;
+            while (position < endExclusive) {
+                position += channel.transferTo(position, endExclusive - position, out);
+            }
+        }
+    }
+
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag));
+    }
+}
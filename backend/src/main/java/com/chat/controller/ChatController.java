@@ -1,33 +1,83 @@
 package com.chat.controller;
 
+import com.chat.analytics.TrafficAnalytics;
+import com.chat.dispatch.ConversationLanes;
 import com.chat.dto.ChatMessage;
+import com.chat.dto.HistoryChunk;
+import com.chat.dto.HistoryRequest;
 import com.chat.model.Message;
 import com.chat.service.ChatService;
+import com.chat.wal.WriteAheadLog;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.messaging.handler.annotation.*;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Controller
+@Profile("!reactive")
 @RequiredArgsConstructor
 @Slf4j
 public class ChatController {
 
+    private static final int DEFAULT_HISTORY_LIMIT = 50;
+    private static final int MAX_HISTORY_LIMIT = 200;
+    private static final int DEFAULT_HISTORY_CHUNK = 25;
+
     private final SimpMessagingTemplate messagingTemplate;
     private final ChatService chatService;
+    private final Optional<WriteAheadLog> writeAheadLog;
+    private final ConversationLanes conversationLanes;
+    private final TrafficAnalytics trafficAnalytics;
 
     @MessageMapping("/chat.send")
     public void sendMessage(@Payload ChatMessage chatMessage) {
         log.info("Received message: {} from {} to conversation {}", 
                 chatMessage.getContent(), chatMessage.getSenderId(), chatMessage.getConversationId());
+        trafficAnalytics.recordMessage(chatMessage.getConversationId(), chatMessage.getSenderId());
         
-        // Save message to database
-        Message savedMessage = chatService.saveMessage(chatMessage);
+        // Persist and broadcast on the conversation's lane so sends to one conversation
+        // are stored, timestamped and delivered in the order they arrived
+        conversationLanes.submit(chatMessage.getConversationId(), () -> persistAndBroadcast(chatMessage));
+    }
+
+    private void persistAndBroadcast(ChatMessage chatMessage) {
+        // A retried send is answered with the original message rather than stored again.
+        // Retries share the conversation's lane with the original, so they can't race it.
+        // With the WAL, a resend this node has no memory of is broadcast under a new id and
+        // only caught by the unique index at replication, which then sends a correction.
+        Message savedMessage = chatService.findResend(chatMessage.getSenderId(), chatMessage.getClientMessageId())
+                .orElse(null);
+        if (savedMessage != null) {
+            log.info("Duplicate send {} from {}, returning message {}",
+                    chatMessage.getClientMessageId(), chatMessage.getSenderId(), savedMessage.getId());
+        } else {
+            // Save message to database, or make it durable in the local WAL and let the
+            // replicator move it to Mongo off the send path
+            savedMessage = chatService.buildMessage(chatMessage);
+            if (writeAheadLog.isPresent()) {
+                writeAheadLog.get().append(savedMessage);
+            } else {
+                savedMessage = chatService.persistOrGetOriginal(savedMessage);
+            }
+            chatService.rememberSend(savedMessage);
+        }
         
         // Create response with saved message ID and timestamp
         chatMessage.setId(savedMessage.getId());
+        chatMessage.setContent(savedMessage.getContent());
         chatMessage.setTimestamp(savedMessage.getTimestamp());
+        chatMessage.setAttachments(savedMessage.getAttachments());
         chatMessage.setType(ChatMessage.MessageType.CHAT);
         
         // Broadcast to conversation topic
@@ -43,6 +93,7 @@ public class ChatController {
     public void typing(@Payload ChatMessage chatMessage) {
         log.debug("User {} is typing in conversation {}", 
                 chatMessage.getSenderId(), chatMessage.getConversationId());
+        trafficAnalytics.recordTyping(chatMessage.getConversationId(), chatMessage.getSenderId());
         
         chatMessage.setType(ChatMessage.MessageType.TYPING);
         
@@ -92,4 +143,65 @@ public class ChatController {
                 chatMessage
         );
     }
+
+    // History over the live STOMP session instead of a separate REST round trip. Messages are
+    // sent back to the requesting session's /user/queue/history in chunks as they come off the
+    // cursor, so the first chunk renders before the whole page has been read.
+    @MessageMapping("/history")
+    public void history(@Payload HistoryRequest request, SimpMessageHeaderAccessor headerAccessor) {
+        String sessionId = headerAccessor.getSessionId();
+        int limit = clamp(request.getLimit(), DEFAULT_HISTORY_LIMIT, MAX_HISTORY_LIMIT);
+        int chunkSize = clamp(request.getChunkSize(), DEFAULT_HISTORY_CHUNK, limit);
+
+        log.debug("History request {} for conversation {} before {}/{}",
+                request.getCorrelationId(), request.getConversationId(), request.getBefore(), request.getBeforeId());
+
+        int chunkIndex = 0;
+        int sent = 0;
+        List<Message> chunk = new ArrayList<>(chunkSize);
+        try (Stream<Message> messages = chatService.streamHistory(
+                request.getConversationId(), request.getBefore(), request.getBeforeId(), limit)) {
+            Iterator<Message> it = messages.iterator();
+            while (it.hasNext()) {
+                chunk.add(it.next());
+                sent++;
+                if (chunk.size() == chunkSize && it.hasNext()) {
+                    sendHistoryChunk(sessionId, request, chunk, chunkIndex++, false, sent == limit);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+        }
+        sendHistoryChunk(sessionId, request, chunk, chunkIndex, true, sent == limit);
+    }
+
+    private void sendHistoryChunk(String sessionId, HistoryRequest request, List<Message> messages,
+                                  int chunkIndex, boolean last, boolean pageFull) {
+        // A full page means there may be older history; the oldest message so far is the cursor
+        Message oldest = last && pageFull && !messages.isEmpty() ? messages.get(messages.size() - 1) : null;
+        HistoryChunk chunk = HistoryChunk.builder()
+                .correlationId(request.getCorrelationId())
+                .conversationId(request.getConversationId())
+                .messages(messages)
+                .chunkIndex(chunkIndex)
+                .last(last)
+                .nextCursor(oldest != null ? oldest.getTimestamp() : null)
+                .nextCursorId(oldest != null ? oldest.getId() : null)
+                .build();
+        messagingTemplate.convertAndSendToUser(sessionId, "/queue/history", chunk, sessionHeaders(sessionId));
+    }
+
+    // Sessions carry no Principal, so address the user destination by session id
+    private static MessageHeaders sessionHeaders(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
+    private static int clamp(Integer requested, int defaultValue, int max) {
+        if (requested == null || requested <= 0) {
+            return defaultValue;
+        }
+        return Math.min(requested, max);
+    }
 }
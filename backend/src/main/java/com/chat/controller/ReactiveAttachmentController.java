@@ -0,0 +1,96 @@
+package com.chat.controller;
+
+import com.chat.model.AttachmentBlob;
+import com.chat.model.Message;
+import com.chat.service.AttachmentService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Map;
+
+// The reactive profile's twin of AttachmentController. Uploads are spooled to a temp file
+// and fed to the same streaming store; downloads return the file as a Resource, which
+// WebFlux serves with Range support and zero-copy where the server allows it.
+@RestController
+@RequestMapping("/api")
+@Profile("reactive")
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveAttachmentController {
+
+    private final AttachmentService attachmentService;
+
+    @PostMapping("/attachments")
+    public Mono<ResponseEntity<?>> upload(
+            @RequestBody Flux<DataBuffer> body,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+            @RequestParam String name,
+            @RequestParam(required = false) String uploaderId) {
+        // Spool the body to disk without blocking, capped one byte past the limit so store()
+        // rejects oversized uploads, then hash and store it off the event loop
+        return Mono.usingWhen(
+                        Mono.fromCallable(() -> Files.createTempFile("upload-", ".part"))
+                                .subscribeOn(Schedulers.boundedElastic()),
+                        spool -> DataBufferUtils.write(
+                                        DataBufferUtils.takeUntilByteCount(body, attachmentService.getMaxBytes() + 1), spool)
+                                .then(Mono.fromCallable(() -> {
+                                    try (InputStream in = Files.newInputStream(spool)) {
+                                        return attachmentService.store(in, contentType, uploaderId);
+                                    }
+                                }).subscribeOn(Schedulers.boundedElastic())),
+                        spool -> Mono.fromCallable(() -> Files.deleteIfExists(spool))
+                                .subscribeOn(Schedulers.boundedElastic()))
+                .doOnNext(blob -> log.info("Stored attachment {} ({} bytes)", blob.getId(), blob.getSize()))
+                .<ResponseEntity<?>>map(blob -> ResponseEntity.ok(Message.Attachment.builder()
+                        .type(blob.getContentType())
+                        .url(AttachmentService.URL_PREFIX + blob.getId())
+                        .name(name)
+                        .size(blob.getSize())
+                        .build()))
+                .onErrorResume(e -> {
+                    log.error("Error storing attachment: {}", e.getMessage());
+                    return Mono.just(ResponseEntity.badRequest().body(Map.of("error", String.valueOf(e.getMessage()))));
+                });
+    }
+
+    @GetMapping("/attachments/{hash}")
+    public Mono<ResponseEntity<Resource>> download(
+            @PathVariable String hash,
+            @RequestParam(required = false) String name,
+            ServerWebExchange exchange) {
+        exchange.getResponse().getHeaders().set("X-Content-Type-Options", "nosniff");
+        return Mono.fromCallable(() -> attachmentService.find(hash))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(found -> found.map(blob -> Mono.just(respond(blob, name))).orElse(Mono.empty()))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    // ResponseEntityResultHandler answers If-None-Match with 304 from the ETag set here
+    private ResponseEntity<Resource> respond(AttachmentBlob blob, String name) {
+        // Content-addressed, so the hash is a strong validator and the content never changes
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag("\"" + blob.getId() + "\"")
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                .contentType(MediaType.parseMediaType(blob.getContentType()));
+        AttachmentService.dispositionFor(blob, name).ifPresent(disposition ->
+                response.header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString()));
+        return response.body(new FileSystemResource(attachmentService.pathFor(blob.getId())));
+    }
+}
@@ -0,0 +1,296 @@
+package com.chat.controller;
+
+import com.chat.model.*;
+import com.chat.repository.reactive.*;
+import com.chat.service.*;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+// Same /api contract as RestApiController, served by WebFlux when the "reactive" profile
+// is active. Read endpoints stream straight off the reactive Mongo cursor; write endpoints
+// reuse the existing services on the bounded elastic pool so the event loop never blocks.
+@RestController
+@RequestMapping("/api")
+@Profile("reactive")
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveRestApiController {
+
+    private final ReactiveUserRepository userRepository;
+    private final ReactiveConversationRepository conversationRepository;
+    private final ReactiveMessageRepository messageRepository;
+    private final ReactiveGroupRepository groupRepository;
+    private final ReactiveInboxEntryRepository inboxEntryRepository;
+    private final ReactiveReadWatermarkRepository readWatermarkRepository;
+    private final UserService userService;
+    private final ChatService chatService;
+    private final ReadReceiptService readReceiptService;
+    private final InboxService inboxService;
+
+    // ==================== User Endpoints ====================
+
+    @PostMapping("/users")
+    public Mono<ResponseEntity<?>> createUser(@RequestBody Map<String, String> request) {
+        return blocking(() -> userService.createUser(
+                        request.get("username"),
+                        request.get("email"),
+                        request.get("password"),
+                        request.get("displayName")))
+                .doOnNext(user -> log.info("Created user: {}", user.getUsername()))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(RuntimeException.class, e -> {
+                    log.error("Error creating user: {}", e.getMessage());
+                    return badRequest(e);
+                });
+    }
+
+    @GetMapping("/users/{id}")
+    public Mono<ResponseEntity<User>> getUser(@PathVariable String id) {
+        return userRepository.findById(id)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/users")
+    public Flux<User> getAllUsers() {
+        return userRepository.findAll();
+    }
+
+    @GetMapping("/users/search")
+    public Flux<User> searchUsers(@RequestParam String query) {
+        return userRepository.findByUsernameContainingIgnoreCase(query);
+    }
+
+    @GetMapping("/users/username/{username}")
+    public Mono<ResponseEntity<User>> getUserByUsername(@PathVariable String username) {
+        return userRepository.findByUsername(username)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PutMapping("/users/{id}/status")
+    public Mono<ResponseEntity<Void>> updateStatus(@PathVariable String id, @RequestBody Map<String, String> request) {
+        return blocking(() -> {
+            userService.updateUserStatus(id, request.get("status"));
+            return ResponseEntity.ok().<Void>build();
+        });
+    }
+
+    @PutMapping("/users/{id}")
+    public Mono<ResponseEntity<?>> updateUser(@PathVariable String id, @RequestBody Map<String, String> request) {
+        return blocking(() -> userService.updateUser(id, request.get("displayName"), request.get("avatar")))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(RuntimeException.class, this::badRequest);
+    }
+
+    // ==================== Conversation Endpoints ====================
+
+    @GetMapping("/conversations/{userId}")
+    public Flux<Conversation> getUserConversations(@PathVariable String userId) {
+        // Enrich private conversations with the other user's name/avatar, keeping cursor order
+        return conversationRepository.findByParticipantsContainingOrderByUpdatedAtDesc(userId)
+                .flatMapSequential(conv -> {
+                    if (conv.getType() != Conversation.ConversationType.PRIVATE) {
+                        return Mono.just(conv);
+                    }
+                    return conv.getParticipants().stream()
+                            .filter(participantId -> !participantId.equals(userId))
+                            .findFirst()
+                            .map(otherId -> userRepository.findById(otherId)
+                                    .map(otherUser -> {
+                                        conv.setGroupName(otherUser.getDisplayName() != null ?
+                                                otherUser.getDisplayName() : otherUser.getUsername());
+                                        conv.setGroupAvatar(otherUser.getAvatar());
+                                        return conv;
+                                    })
+                                    .defaultIfEmpty(conv))
+                            .orElse(Mono.just(conv));
+                });
+    }
+
+    @GetMapping("/conversations/detail/{conversationId}")
+    public Mono<ResponseEntity<Conversation>> getConversation(@PathVariable String conversationId) {
+        return conversationRepository.findById(conversationId)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/conversations/private")
+    public Mono<ResponseEntity<Conversation>> createPrivateConversation(@RequestBody Map<String, String> request) {
+        return blocking(() -> chatService.getOrCreatePrivateConversation(
+                        request.get("user1Id"),
+                        request.get("user2Id")))
+                .doOnNext(conv -> log.info("Created/retrieved private conversation: {}", conv.getId()))
+                .map(ResponseEntity::ok);
+    }
+
+    @PutMapping("/conversations/{conversationId}/read")
+    public Mono<ResponseEntity<Void>> markAsRead(
+            @PathVariable String conversationId,
+            @RequestBody Map<String, String> request) {
+        return blocking(() -> {
+            chatService.markConversationAsRead(conversationId, request.get("userId"));
+            return ResponseEntity.ok().<Void>build();
+        });
+    }
+
+    @GetMapping("/conversations/{conversationId}/watermarks")
+    public Mono<List<ReadWatermark>> getReadWatermarks(@PathVariable String conversationId) {
+        return readWatermarkRepository.findByConversationId(conversationId)
+                .collectList()
+                .map(stored -> readReceiptService.withPending(conversationId, stored));
+    }
+
+    // ==================== Inbox Endpoints ====================
+
+    @GetMapping("/inbox/{userId}")
+    public Mono<Map<String, Object>> getInbox(@PathVariable String userId) {
+        // Version first, as in InboxService.getInbox; building a never-built inbox blocks
+        return Mono.fromCallable(() -> {
+                    long version = inboxService.safeVersion();
+                    inboxService.ensureBuilt(userId);
+                    return version;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(version -> inboxEntryRepository.findByUserIdAndRemovedFalseOrderByUpdatedAtDesc(userId)
+                        .collectList()
+                        .map(entries -> inboxService.inboxOf(version, entries)));
+    }
+
+    @GetMapping("/inbox/{userId}/changes")
+    public Mono<Map<String, Object>> getInboxChanges(
+            @PathVariable String userId,
+            @RequestParam(defaultValue = "0") long since) {
+        long upTo = inboxService.safeVersion();
+        if (upTo <= since) {
+            return Mono.just(inboxService.changesSince(since, List.of()));
+        }
+        return inboxEntryRepository.findChanges(userId, since, upTo)
+                .collectList()
+                .map(changes -> inboxService.changesSince(since, changes));
+    }
+
+    // ==================== Message Endpoints ====================
+
+    @GetMapping("/messages/{conversationId}")
+    public Flux<Message> getMessages(
+            @PathVariable String conversationId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        return messageRepository.findByConversationIdAndDeletedFalseOrderByTimestampDesc(
+                conversationId, PageRequest.of(page, size));
+    }
+
+    @GetMapping("/messages/{conversationId}/seen")
+    public Mono<List<String>> getSeenBy(
+            @PathVariable String conversationId,
+            @RequestParam Instant timestamp) {
+        return readWatermarkRepository.findByConversationIdAndLastReadAtGreaterThanEqual(conversationId, timestamp)
+                .collectList()
+                .map(stored -> readReceiptService.seenByWithPending(conversationId, timestamp, stored));
+    }
+
+    // ==================== Group Endpoints ====================
+
+    @PostMapping("/groups")
+    public Mono<ResponseEntity<?>> createGroup(@RequestBody Map<String, Object> request) {
+        @SuppressWarnings("unchecked")
+        List<String> memberIds = (List<String>) request.get("memberIds");
+        return blocking(() -> chatService.createGroup(
+                        (String) request.get("name"),
+                        (String) request.get("creatorId"),
+                        memberIds))
+                .doOnNext(group -> log.info("Created group: {} with {} members",
+                        group.getName(), group.getMembers().size()))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(RuntimeException.class, e -> {
+                    log.error("Error creating group: {}", e.getMessage());
+                    return badRequest(e);
+                });
+    }
+
+    @GetMapping("/groups/{groupId}")
+    public Flux<Group> getGroup(@PathVariable String groupId) {
+        return groupRepository.findByMembersUserId(groupId);
+    }
+
+    @GetMapping("/groups/user/{userId}")
+    public Flux<Group> getUserGroups(@PathVariable String userId) {
+        return groupRepository.findByMembersUserId(userId);
+    }
+
+    @PostMapping("/groups/{groupId}/members")
+    public Mono<ResponseEntity<?>> addMember(
+            @PathVariable String groupId,
+            @RequestBody Map<String, String> request) {
+        return blocking(() -> chatService.addMemberToGroup(groupId, request.get("userId")))
+                .doOnNext(group -> log.info("Added member {} to group {}", request.get("userId"), groupId))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(RuntimeException.class, this::badRequest);
+    }
+
+    @PostMapping("/groups/{groupId}/members/bulk")
+    public Mono<ResponseEntity<?>> addMembers(
+            @PathVariable String groupId,
+            @RequestBody Map<String, Object> request) {
+        return blocking(() -> chatService.addMembersToGroup(groupId, userIds(request)))
+                .doOnNext(group -> log.info("Added {} members to group {}", userIds(request).size(), groupId))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(RuntimeException.class, this::badRequest);
+    }
+
+    @PostMapping("/groups/{groupId}/members/bulk-remove")
+    public Mono<ResponseEntity<?>> removeMembers(
+            @PathVariable String groupId,
+            @RequestBody Map<String, Object> request) {
+        return blocking(() -> chatService.removeMembersFromGroup(
+                        groupId, userIds(request), (String) request.get("requesterId")))
+                .doOnNext(group -> log.info("Removed {} members from group {}", userIds(request).size(), groupId))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(RuntimeException.class, this::badRequest);
+    }
+
+    @DeleteMapping("/groups/{groupId}/members/{userId}")
+    public Mono<ResponseEntity<?>> removeMember(
+            @PathVariable String groupId,
+            @PathVariable String userId,
+            @RequestParam String requesterId) {
+        return blocking(() -> chatService.removeMemberFromGroup(groupId, userId, requesterId))
+                .doOnNext(group -> log.info("Removed member {} from group {}", userId, groupId))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(RuntimeException.class, this::badRequest);
+    }
+
+    // ==================== Health Check ====================
+
+    @GetMapping("/health")
+    public Mono<Map<String, String>> healthCheck() {
+        return Mono.just(Map.of("status", "UP", "message", "Chat API is running"));
+    }
+
+    private <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // A non-list value fails here with ClassCastException, inside the Mono, and becomes a 400
+    @SuppressWarnings("unchecked")
+    private static List<String> userIds(Map<String, Object> request) {
+        return (List<String>) request.get("userIds");
+    }
+
+    private Mono<ResponseEntity<?>> badRequest(RuntimeException e) {
+        return Mono.just(ResponseEntity.badRequest().body(Map.of("error", String.valueOf(e.getMessage()))));
+    }
+}
@@ -4,20 +4,25 @@ import com.chat.model.*;
 import com.chat.service.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api")
+@Profile("!reactive")
 @RequiredArgsConstructor
 @Slf4j
 public class RestApiController {
 
     private final UserService userService;
     private final ChatService chatService;
+    private final ReadReceiptService readReceiptService;
+    private final InboxService inboxService;
 
     // ==================== User Endpoints ====================
 
@@ -113,6 +118,25 @@ public class RestApiController {
         return ResponseEntity.ok().build();
     }
 
+    @GetMapping("/conversations/{conversationId}/watermarks")
+    public ResponseEntity<List<ReadWatermark>> getReadWatermarks(@PathVariable String conversationId) {
+        return ResponseEntity.ok(readReceiptService.getWatermarks(conversationId));
+    }
+
+    // ==================== Inbox Endpoints ====================
+
+    @GetMapping("/inbox/{userId}")
+    public ResponseEntity<Map<String, Object>> getInbox(@PathVariable String userId) {
+        return ResponseEntity.ok(inboxService.getInbox(userId));
+    }
+
+    @GetMapping("/inbox/{userId}/changes")
+    public ResponseEntity<Map<String, Object>> getInboxChanges(
+            @PathVariable String userId,
+            @RequestParam(defaultValue = "0") long since) {
+        return ResponseEntity.ok(inboxService.getChanges(userId, since));
+    }
+
     // ==================== Message Endpoints ====================
 
     @GetMapping("/messages/{conversationId}")
@@ -123,6 +147,13 @@ public class RestApiController {
         return ResponseEntity.ok(chatService.getMessages(conversationId, page, size));
     }
 
+    @GetMapping("/messages/{conversationId}/seen")
+    public ResponseEntity<List<String>> getSeenBy(
+            @PathVariable String conversationId,
+            @RequestParam Instant timestamp) {
+        return ResponseEntity.ok(readReceiptService.getSeenBy(conversationId, timestamp));
+    }
+
     // ==================== Group Endpoints ====================
 
     @PostMapping("/groups")
@@ -166,6 +197,37 @@ public class RestApiController {
         }
     }
 
+    @PostMapping("/groups/{groupId}/members/bulk")
+    public ResponseEntity<?> addMembers(
+            @PathVariable String groupId,
+            @RequestBody Map<String, Object> request) {
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> userIds = (List<String>) request.get("userIds");
+            Group group = chatService.addMembersToGroup(groupId, userIds);
+            log.info("Added {} members to group {}", userIds.size(), groupId);
+            return ResponseEntity.ok(group);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    @PostMapping("/groups/{groupId}/members/bulk-remove")
+    public ResponseEntity<?> removeMembers(
+            @PathVariable String groupId,
+            @RequestBody Map<String, Object> request) {
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> userIds = (List<String>) request.get("userIds");
+            Group group = chatService.removeMembersFromGroup(
+                    groupId, userIds, (String) request.get("requesterId"));
+            log.info("Removed {} members from group {}", userIds.size(), groupId);
+            return ResponseEntity.ok(group);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
     @DeleteMapping("/groups/{groupId}/members/{userId}")
     public ResponseEntity<?> removeMember(
             @PathVariable String groupId,
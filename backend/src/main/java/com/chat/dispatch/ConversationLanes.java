@@ -0,0 +1,216 @@
+package com.chat.dispatch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Every conversation is pinned to one single-threaded lane, so work for a conversation
+// runs strictly in submission order while different conversations run in parallel.
+// Lanes are bounded: a full lane blocks the submitting (inbound channel) thread, which
+// pushes back on the client, and gives up after the submit timeout.
+//
+// Lanes broadcast through the broker, so they must drain before it goes away. The broker and
+// the WebSocket handler sit in the default (last-to-stop-first) lifecycle phase, and within a
+// phase a bean's dependents are stopped before it: depending on both makes the lanes stop first.
+@Component
+@DependsOn({"simpleBrokerMessageHandler", "subProtocolWebSocketHandler"})
+@Profile("!reactive")
+@Slf4j
+public class ConversationLanes implements SmartLifecycle {
+
+    // Enqueued last on shutdown; everything ahead of it still runs
+    private static final Runnable STOP = () -> {
+    };
+
+    private final Lane[] lanes;
+    private final int batchSize;
+    private final long submitTimeoutMillis;
+    private final long drainTimeoutMillis;
+    private final Counter rejected;
+
+    // Submitters hold the read side while enqueuing so shutdown can't slip STOP in front of them
+    private final ReadWriteLock intake = new ReentrantReadWriteLock();
+    private volatile boolean accepting = true;
+
+    public ConversationLanes(MeterRegistry meterRegistry,
+                             @Value("${chat.lanes.count:0}") int laneCount,
+                             @Value("${chat.lanes.batch-size:64}") int batchSize,
+                             @Value("${chat.lanes.capacity:10000}") int capacity,
+                             @Value("${chat.lanes.submit-timeout-ms:1000}") long submitTimeoutMillis,
+                             @Value("${chat.lanes.drain-timeout-ms:10000}") long drainTimeoutMillis) {
+        int count = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        this.batchSize = batchSize;
+        this.submitTimeoutMillis = submitTimeoutMillis;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        this.rejected = Counter.builder("chat.lanes.tasks.rejected").register(meterRegistry);
+        this.lanes = new Lane[count];
+        for (int i = 0; i < count; i++) {
+            lanes[i] = new Lane(i, capacity, meterRegistry);
+            lanes[i].thread.start();
+        }
+        log.info("Started {} conversation lanes of capacity {}", count, capacity);
+    }
+
+    public void submit(String conversationId, Runnable task) {
+        boolean queued;
+        intake.readLock().lock();
+        try {
+            if (!accepting) {
+                throw new RuntimeException("Conversation lanes are shutting down");
+            }
+            queued = laneFor(conversationId).queue.offer(task, submitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        } finally {
+            intake.readLock().unlock();
+        }
+        if (!queued) {
+            rejected.increment();
+            throw new RuntimeException("Conversation lane is full, try again later");
+        }
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    public int queueDepth(int lane) {
+        return lanes[lane].queue.size();
+    }
+
+    private Lane laneFor(String conversationId) {
+        int hash = conversationId != null ? conversationId.hashCode() : 0;
+        // Spread the hash bits so sequential ObjectIds don't cluster on a few lanes
+        return lanes[Math.floorMod(hash ^ (hash >>> 16), lanes.length)];
+    }
+
+    // Lanes run from construction; there is nothing further to start
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+        try {
+            shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return accepting;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE;
+    }
+
+    // Stops intake, then lets every lane finish what it already accepted. Only a lane still
+    // busy after the drain timeout is interrupted, and what it drops is logged.
+    public void shutdown() throws InterruptedException {
+        intake.writeLock().lock();
+        try {
+            if (!accepting) {
+                return;
+            }
+            accepting = false;
+            for (Lane lane : lanes) {
+                // A running lane frees a slot quickly; one wedged on a task never will
+                if (!lane.queue.offer(STOP, drainTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    log.warn("{} is stuck, dropping {} queued tasks", lane.thread.getName(), lane.queue.size());
+                    lane.thread.interrupt();
+                }
+            }
+        } finally {
+            intake.writeLock().unlock();
+        }
+
+        long deadline = System.currentTimeMillis() + drainTimeoutMillis;
+        for (Lane lane : lanes) {
+            lane.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        for (Lane lane : lanes) {
+            if (lane.thread.isAlive()) {
+                log.warn("{} did not drain in {} ms, dropping {} queued tasks",
+                        lane.thread.getName(), drainTimeoutMillis, lane.queue.size());
+                lane.thread.interrupt();
+            }
+        }
+    }
+
+    private class Lane implements Runnable {
+        private final BlockingQueue<Runnable> queue;
+        private final Thread thread;
+        private final Counter processed;
+        private final DistributionSummary batchSizes;
+
+        Lane(int index, int capacity, MeterRegistry meterRegistry) {
+            String lane = String.valueOf(index);
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, "conversation-lane-" + index);
+            this.thread.setDaemon(true);
+            Gauge.builder("chat.lanes.queue.depth", queue, BlockingQueue::size)
+                    .tag("lane", lane)
+                    .register(meterRegistry);
+            this.processed = Counter.builder("chat.lanes.tasks.processed")
+                    .tag("lane", lane)
+                    .register(meterRegistry);
+            this.batchSizes = DistributionSummary.builder("chat.lanes.batch.size")
+                    .tag("lane", lane)
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public void run() {
+            List<Runnable> batch = new ArrayList<>(batchSize);
+            boolean stopping = false;
+            while (!stopping) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                // Take whatever else piled up while we were busy in one queue operation. This only
+                // saves queue handoffs; each task still runs, and persists, on its own.
+                queue.drainTo(batch, batchSize - 1);
+
+                int ran = 0;
+                for (Runnable task : batch) {
+                    if (task == STOP) {
+                        stopping = true;
+                        break;
+                    }
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        log.error("Task failed on {}: {}", thread.getName(), e.getMessage(), e);
+                    }
+                    ran++;
+                }
+                batchSizes.record(ran);
+                processed.increment(ran);
+                batch.clear();
+            }
+        }
+    }
+}
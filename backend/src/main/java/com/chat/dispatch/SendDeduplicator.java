@@ -0,0 +1,162 @@
+package com.chat.dispatch;
+
+import com.chat.model.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Remembers recent sends by (senderId, clientMessageId) so a client retrying after a reconnect
+// gets its original message back instead of a duplicate. A Bloom filter answers "definitely
+// new" for the common case without touching the per-sender windows; it rotates between two
+// generations so anything recorded within the last window is always still covered.
+@Component
+public class SendDeduplicator {
+
+    private static final int HASHES = 4;
+
+    private final long windowMillis;
+    private final int perSender;
+
+    private final Map<String, SenderWindow> senders = new ConcurrentHashMap<>();
+    private final Counter duplicates;
+    private final Counter filterFalsePositives;
+
+    private volatile AtomicLongArray current;
+    private volatile AtomicLongArray previous;
+    private volatile long rotatedAt = System.currentTimeMillis();
+
+    public SendDeduplicator(MeterRegistry meterRegistry,
+                            @Value("${chat.dedup.window-ms:600000}") long windowMillis,
+                            @Value("${chat.dedup.per-sender:256}") int perSender,
+                            @Value("${chat.dedup.filter-bits:1048576}") int filterBits) {
+        this.windowMillis = windowMillis;
+        this.perSender = perSender;
+        this.current = new AtomicLongArray(Math.max(1, filterBits / 64));
+        this.previous = new AtomicLongArray(Math.max(1, filterBits / 64));
+        this.duplicates = Counter.builder("chat.dedup.duplicates").register(meterRegistry);
+        this.filterFalsePositives = Counter.builder("chat.dedup.filter.false-positives").register(meterRegistry);
+        meterRegistry.gauge("chat.dedup.senders", senders, Map::size);
+    }
+
+    // False means the send is definitely new; true means it may be a resend
+    public boolean mightContain(String senderId, String clientMessageId) {
+        rotateIfDue();
+        long hash = hash(senderId, clientMessageId);
+        return contains(current, hash) || contains(previous, hash);
+    }
+
+    public Optional<Message> findRecent(String senderId, String clientMessageId) {
+        SenderWindow window = senders.get(senderId);
+        Message original = window != null ? window.get(clientMessageId, System.currentTimeMillis() - windowMillis) : null;
+        if (original != null) {
+            duplicates.increment();
+        }
+        return Optional.ofNullable(original);
+    }
+
+    public void recordFalsePositive() {
+        filterFalsePositives.increment();
+    }
+
+    public void record(String senderId, String clientMessageId, Message message) {
+        rotateIfDue();
+        set(current, hash(senderId, clientMessageId));
+        senders.computeIfAbsent(senderId, id -> new SenderWindow(perSender))
+                .put(clientMessageId, message, System.currentTimeMillis());
+    }
+
+    private void rotateIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - rotatedAt < windowMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (now - rotatedAt < windowMillis) {
+                return;
+            }
+            previous = current;
+            current = new AtomicLongArray(previous.length());
+            rotatedAt = now;
+            // Windows untouched for a full period hold nothing that could still match
+            long cutoff = now - windowMillis;
+            senders.values().removeIf(window -> window.lastWrite() < cutoff);
+        }
+    }
+
+    private boolean contains(AtomicLongArray bits, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bits.length() * 64);
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void set(AtomicLongArray bits, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bits.length() * 64);
+            long mask = 1L << bit;
+            bits.getAndUpdate(bit >>> 6, word -> word | mask);
+        }
+    }
+
+    // 64-bit FNV-1a over both ids; the two halves feed double hashing
+    private static long hash(String senderId, String clientMessageId) {
+        long h = 0xcbf29ce484222325L;
+        h = mix(h, senderId);
+        h = (h ^ 0x1f) * 0x100000001b3L;
+        h = mix(h, clientMessageId);
+        return h ^ (h >>> 29);
+    }
+
+    private static long mix(long h, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // Most recent sends for one sender, oldest evicted first once the bound is reached
+    private static class SenderWindow {
+        private final LinkedHashMap<String, Entry> entries;
+        private volatile long lastWrite;
+
+        SenderWindow(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized Message get(String clientMessageId, long notBefore) {
+            Entry entry = entries.get(clientMessageId);
+            return entry != null && entry.recordedAt() >= notBefore ? entry.message() : null;
+        }
+
+        synchronized void put(String clientMessageId, Message message, long now) {
+            entries.put(clientMessageId, new Entry(message, now));
+            lastWrite = now;
+        }
+
+        long lastWrite() {
+            return lastWrite;
+        }
+    }
+
+    private record Entry(Message message, long recordedAt) {
+    }
+}
@@ -1,7 +1,9 @@
 package com.chat.dto;
 
+import com.chat.model.Message;
 import lombok.*;
 import java.time.Instant;
+import java.util.List;
 
 @Data
 @NoArgsConstructor
@@ -13,7 +15,9 @@ public class ChatMessage {
     private String senderId;
     private String senderName;
     private String content;
+    private String clientMessageId;
     private MessageType type;
+    private List<Message.Attachment> attachments;
     private Instant timestamp;
     
     public enum MessageType {
@@ -0,0 +1,23 @@
+package com.chat.dto;
+
+import com.chat.model.Message;
+import lombok.*;
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HistoryChunk {
+    private String correlationId;
+    private String conversationId;
+    // Newest first, continuing from the previous chunk
+    private List<Message> messages;
+    private int chunkIndex;
+    private boolean last;
+    // Pass as HistoryRequest.before/beforeId to fetch the next older page; null when history
+    // is exhausted. Messages can share a millisecond, so the id is needed to break the tie.
+    private Instant nextCursor;
+    private String nextCursorId;
+}
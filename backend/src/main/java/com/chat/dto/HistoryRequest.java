@@ -0,0 +1,20 @@
+package com.chat.dto;
+
+import lombok.*;
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HistoryRequest {
+    private String correlationId;
+    private String conversationId;
+    // Cursor from the previous chunk's nextCursor/nextCursorId; only messages ordered after
+    // (before, beforeId) in (timestamp desc, id desc) are returned. A null before starts from
+    // the newest; a before without beforeId is read as strictly older than that instant.
+    private Instant before;
+    private String beforeId;
+    private Integer limit;
+    private Integer chunkSize;
+}
@@ -0,0 +1,26 @@
+package com.chat.dto;
+
+import lombok.*;
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReadReceiptBatch {
+    public static final String TYPE = "READ_RECEIPTS";
+
+    @Builder.Default
+    private String type = TYPE;
+    private String conversationId;
+    private List<Receipt> receipts;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Receipt {
+        private String userId;
+        private Instant lastReadAt;
+    }
+}
@@ -0,0 +1,19 @@
+package com.chat.dto;
+
+import lombok.*;
+
+// Sent on the conversation topic when a send that was broadcast under its own id turns out
+// to be a resend of a message already stored; clients replace duplicateId with the original
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SendCorrection {
+    public static final String TYPE = "SEND_CORRECTION";
+
+    @Builder.Default
+    private String type = TYPE;
+    private String conversationId;
+    private String duplicateId;
+    private ChatMessage original;
+}
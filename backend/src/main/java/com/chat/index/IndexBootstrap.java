@@ -0,0 +1,168 @@
+package com.chat.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Creates every index declared with @Indexed/@CompoundIndex on the @Document models, plus
+// those supplied by IndexContributor beans. Spring Boot leaves auto-index-creation off, so
+// without this none of them would exist.
+//   create  - ensure indexes at startup (default)
+//   verify  - create nothing, fail startup if a declared index is missing or exists with
+//             other options (unique, sparse, partial filter, TTL)
+//   migrate - ensure indexes, then exit
+//   off     - do nothing
+@Component
+@Order(0)
+@Slf4j
+public class IndexBootstrap implements ApplicationRunner {
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+    private final ConfigurableApplicationContext applicationContext;
+    private final List<IndexContributor> contributors;
+    private final String mode;
+
+    public IndexBootstrap(MongoTemplate mongoTemplate,
+                          MongoMappingContext mappingContext,
+                          ConfigurableApplicationContext applicationContext,
+                          List<IndexContributor> contributors,
+                          @Value("${chat.indexes.mode:create}") String mode) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+        this.applicationContext = applicationContext;
+        this.contributors = contributors;
+        this.mode = mode;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        switch (mode) {
+            case "off" -> log.info("Index bootstrap disabled");
+            case "verify" -> verify();
+            case "create" -> create();
+            case "migrate" -> {
+                create();
+                log.info("Index migration complete, shutting down");
+                System.exit(SpringApplication.exit(applicationContext, () -> 0));
+            }
+            default -> throw new IllegalStateException("Unknown chat.indexes.mode: " + mode);
+        }
+    }
+
+    private void create() {
+        int created = 0;
+        for (Map.Entry<String, List<IndexDefinition>> collection : expectedIndexes().entrySet()) {
+            IndexOperations indexOps = mongoTemplate.indexOps(collection.getKey());
+            for (IndexDefinition index : collection.getValue()) {
+                indexOps.ensureIndex(index);
+                created++;
+            }
+        }
+        log.info("Ensured {} declared indexes", created);
+    }
+
+    private void verify() {
+        List<String> missing = new ArrayList<>();
+        List<String> mismatched = new ArrayList<>();
+        for (Map.Entry<String, List<IndexDefinition>> collection : expectedIndexes().entrySet()) {
+            List<IndexInfo> existing = mongoTemplate.indexOps(collection.getKey()).getIndexInfo();
+            for (IndexDefinition index : collection.getValue()) {
+                List<String> keys = keysOf(index.getIndexKeys());
+                List<IndexInfo> sameKeys = existing.stream().filter(info -> keysOf(info).equals(keys)).toList();
+                String label = collection.getKey() + " " + index.getIndexKeys().toJson();
+                if (sameKeys.isEmpty()) {
+                    missing.add(label);
+                } else if (sameKeys.stream().noneMatch(info -> optionsMatch(index.getIndexOptions(), info))) {
+                    // Same keys but, say, not unique or without the TTL: the index exists and still doesn't do its job
+                    mismatched.add(label + " expected " + index.getIndexOptions().toJson());
+                }
+            }
+        }
+        if (!missing.isEmpty() || !mismatched.isEmpty()) {
+            throw new IllegalStateException("Missing declared indexes: " + missing
+                    + ", declared indexes with other options: " + mismatched);
+        }
+        log.info("All declared indexes are present");
+    }
+
+    // Compares the options that change what an index enforces or holds; the name, background
+    // and collation defaults don't
+    static boolean optionsMatch(Document options, IndexInfo info) {
+        if (options.getBoolean("unique", false) != info.isUnique()
+                || options.getBoolean("sparse", false) != info.isSparse()) {
+            return false;
+        }
+        Optional<Long> expireAfterSeconds = Optional.ofNullable((Number) options.get("expireAfterSeconds"))
+                .map(Number::longValue);
+        if (!expireAfterSeconds.equals(info.getExpireAfter().map(Duration::getSeconds))) {
+            return false;
+        }
+        Object partialFilter = options.get("partialFilterExpression");
+        String existingFilter = info.getPartialFilterExpression();
+        if (partialFilter == null || existingFilter == null) {
+            return partialFilter == null && existingFilter == null;
+        }
+        return partialFilter.equals(Document.parse(existingFilter));
+    }
+
+    // Declared and contributed indexes per collection name
+    Map<String, List<IndexDefinition>> expectedIndexes() {
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        Map<String, List<IndexDefinition>> expected = new LinkedHashMap<>();
+        for (MongoPersistentEntity<?> entity : documentEntities()) {
+            resolver.resolveIndexFor(entity.getTypeInformation()).forEach(index ->
+                    expected.computeIfAbsent(entity.getCollection(), c -> new ArrayList<>()).add(index));
+        }
+        for (IndexContributor contributor : contributors) {
+            String collection = mappingContext.getRequiredPersistentEntity(contributor.entityType()).getCollection();
+            expected.computeIfAbsent(collection, c -> new ArrayList<>()).addAll(contributor.indexes());
+        }
+        return expected;
+    }
+
+    private List<MongoPersistentEntity<?>> documentEntities() {
+        List<MongoPersistentEntity<?>> entities = new ArrayList<>();
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (entity.isAnnotationPresent(org.springframework.data.mongodb.core.mapping.Document.class)) {
+                entities.add(entity);
+            }
+        }
+        return entities;
+    }
+
+    // Key order is part of an index's identity ({a:1, b:1} is not {b:1, a:1}), and Document
+    // equality ignores it, so keys are compared as ordered "field:direction" lists
+    private static List<String> keysOf(IndexInfo info) {
+        return info.getIndexFields().stream()
+                .map(field -> field.getKey() + ":" + (field.getDirection() == Sort.Direction.DESC ? -1 : 1))
+                .toList();
+    }
+
+    static List<String> keysOf(Document keys) {
+        return keys.entrySet().stream()
+                .map(key -> key.getKey() + ":" + (key.getValue() instanceof Number n && n.intValue() < 0 ? -1 : 1))
+                .toList();
+    }
+}
@@ -0,0 +1,14 @@
+package com.chat.index;
+
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+
+import java.util.List;
+
+// Indexes whose shape depends on configuration and so can't be declared with annotations.
+// IndexBootstrap creates and verifies them alongside the declared ones, under chat.indexes.mode.
+public interface IndexContributor {
+
+    Class<?> entityType();
+
+    List<IndexDefinition> indexes();
+}
@@ -0,0 +1,21 @@
+package com.chat.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.Instant;
+
+@Document(collection = "attachments")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AttachmentBlob {
+    // SHA-256 of the content, which is also its key in the local store
+    @Id
+    private String id;
+    private String contentType;
+    private long size;
+    private String uploadedBy;
+    private Instant createdAt;
+}
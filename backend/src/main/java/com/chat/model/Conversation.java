@@ -2,12 +2,19 @@ package com.chat.model;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 
 @Document(collection = "conversations")
+@CompoundIndexes({
+        @CompoundIndex(name = "participants_updatedAt", def = "{ 'participants': 1, 'updatedAt': -1 }"),
+        @CompoundIndex(name = "type_updatedAt", def = "{ 'type': 1, 'updatedAt': -1 }")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -19,6 +26,7 @@ public class Conversation {
     private List<String> participants;
     private LastMessage lastMessage;
     private Map<String, Integer> unreadCount;
+    @Indexed(sparse = true)
     private String groupId;
     private String groupName;
     private String groupAvatar;
@@ -2,11 +2,14 @@ package com.chat.model;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.Instant;
 import java.util.List;
 
 @Document(collection = "groups")
+@CompoundIndex(name = "members_userId", def = "{ 'members.userId': 1 }")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -17,9 +20,12 @@ public class Group {
     private String name;
     private String description;
     private String avatar;
+    @Indexed
     private String createdBy;
+    @Indexed
     private List<String> admins;
     private List<GroupMember> members;
+    @Indexed
     private String conversationId;
     private GroupSettings settings;
     private Instant createdAt;
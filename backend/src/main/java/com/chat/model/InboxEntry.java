@@ -0,0 +1,47 @@
+package com.chat.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.Instant;
+import java.util.List;
+
+// One row per (user, conversation): everything the sidebar shows, kept up to date on write
+@Document(collection = "inbox")
+@CompoundIndexes({
+        @CompoundIndex(name = "user_removed_updatedAt", def = "{ 'userId': 1, 'removed': 1, 'updatedAt': -1 }"),
+        @CompoundIndex(name = "user_version", def = "{ 'userId': 1, 'version': 1 }")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InboxEntry {
+    @Id
+    private String id;
+    private String userId;
+    @Indexed
+    private String conversationId;
+    private Conversation.ConversationType type;
+    // Group name, or the other participant's display name for private conversations
+    private String title;
+    private String avatar;
+    // The other participant of a private conversation, so profile edits can find its rows
+    @Indexed(sparse = true)
+    private String counterpartId;
+    private List<String> participants;
+    private int memberCount;
+    private Conversation.LastMessage lastMessage;
+    private int unreadCount;
+    // Set when the user leaves the conversation, so delta readers learn about the removal
+    private boolean removed;
+    private long version;
+    private Instant updatedAt;
+
+    public static String idFor(String userId, String conversationId) {
+        return userId + ":" + conversationId;
+    }
+}
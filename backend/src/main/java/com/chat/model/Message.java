@@ -2,11 +2,23 @@ package com.chat.model;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.Instant;
 import java.util.List;
 
 @Document(collection = "messages")
+@CompoundIndexes({
+        @CompoundIndex(name = "conversation_timestamp", def = "{ 'conversationId': 1, 'timestamp': -1 }"),
+        // _id breaks timestamp ties for the history cursor
+        @CompoundIndex(name = "conversation_deleted_timestamp_id",
+                def = "{ 'conversationId': 1, 'deleted': 1, 'timestamp': -1, '_id': -1 }"),
+        // Durable backstop for send deduplication; messages without a client ID are not indexed
+        @CompoundIndex(name = "sender_clientMessageId", def = "{ 'senderId': 1, 'clientMessageId': 1 }",
+                unique = true, partialFilter = "{ 'clientMessageId': { $type: 'string' } }")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -15,12 +27,14 @@ public class Message {
     @Id
     private String id;
     private String conversationId;
+    @Indexed
     private String senderId;
     private String senderName;
     private String content;
+    // Set by the client so a retried send can be recognised
+    private String clientMessageId;
     private MessageType messageType;
     private List<Attachment> attachments;
-    private List<ReadReceipt> readBy;
     private String replyTo;
     private boolean edited;
     private Instant editedAt;
@@ -28,6 +42,10 @@ public class Message {
     private Instant deletedAt;
     private Instant timestamp;
     private Instant createdAt;
+    // Set from the conversation type's retention policy; null means keep forever
+    private Instant expiresAt;
+    // RetentionPolicy.signature() that expiresAt was computed under
+    private String expiryPolicy;
     
     public enum MessageType {
         TEXT, IMAGE, FILE, SYSTEM
@@ -43,12 +61,4 @@ public class Message {
         private String name;
         private Long size;
     }
-    
-    @Data
-    @NoArgsConstructor
-    @AllArgsConstructor
-    public static class ReadReceipt {
-        private String userId;
-        private Instant readAt;
-    }
 }
@@ -0,0 +1,26 @@
+package com.chat.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.Instant;
+
+@Document(collection = "read_watermarks")
+@CompoundIndex(name = "conversation_lastReadAt", def = "{ 'conversationId': 1, 'lastReadAt': -1 }")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReadWatermark {
+    @Id
+    private String id;
+    private String conversationId;
+    private String userId;
+    private Instant lastReadAt;
+    private Instant updatedAt;
+
+    public static String idFor(String conversationId, String userId) {
+        return conversationId + ":" + userId;
+    }
+}
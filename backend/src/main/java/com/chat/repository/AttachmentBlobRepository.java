@@ -0,0 +1,9 @@
+package com.chat.repository;
+
+import com.chat.model.AttachmentBlob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AttachmentBlobRepository extends MongoRepository<AttachmentBlob, String> {
+}
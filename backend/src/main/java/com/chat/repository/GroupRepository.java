@@ -19,4 +19,7 @@ public interface GroupRepository extends MongoRepository<Group, String> {
     
     @Query("{ 'admins': ?0 }")
     List<Group> findByAdminsContaining(String userId);
+    
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'members.userId': 1, 'admins': 1, 'conversationId': 1 }")
+    Optional<Group> findMembershipById(String groupId);
 }
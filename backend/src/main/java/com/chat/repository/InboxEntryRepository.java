@@ -0,0 +1,15 @@
+package com.chat.repository;
+
+import com.chat.model.InboxEntry;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface InboxEntryRepository extends MongoRepository<InboxEntry, String> {
+    List<InboxEntry> findByUserIdAndRemovedFalseOrderByUpdatedAtDesc(String userId);
+    @Query(value = "{ 'userId': ?0, 'version': { $gt: ?1, $lte: ?2 } }", sort = "{ 'version': 1 }")
+    List<InboxEntry> findChanges(String userId, long afterVersion, long upToVersion);
+}
@@ -3,14 +3,29 @@ package com.chat.repository;
 import com.chat.model.Message;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface MessageRepository extends MongoRepository<Message, String> {
     List<Message> findByConversationIdOrderByTimestampDesc(String conversationId, Pageable pageable);
+    List<Message> findByConversationIdAndDeletedFalseOrderByTimestampDesc(String conversationId, Pageable pageable);
+    Optional<Message> findFirstByConversationIdAndDeletedFalseOrderByTimestampDesc(String conversationId);
+    Stream<Message> findByConversationIdAndDeletedFalseAndTimestampBeforeOrderByTimestampDesc(
+            String conversationId, Instant before, Pageable pageable);
+    // Keyset page after (before, beforeId) in (timestamp desc, _id desc) order. The $lte bounds
+    // the index scan; the $or only breaks ties within the boundary millisecond.
+    @Query(value = "{ 'conversationId': ?0, 'deleted': false, 'timestamp': { $lte: ?1 }, "
+            + "$or: [ { 'timestamp': { $lt: ?1 } }, { '_id': { $lt: ?2 } } ] }",
+            sort = "{ 'timestamp': -1, '_id': -1 }")
+    Stream<Message> findHistoryPageBefore(String conversationId, Instant before, String beforeId, Pageable pageable);
     List<Message> findByConversationIdOrderByTimestampAsc(String conversationId);
     List<Message> findBySenderId(String senderId);
+    Optional<Message> findBySenderIdAndClientMessageId(String senderId, String clientMessageId);
     long countByConversationId(String conversationId);
 }
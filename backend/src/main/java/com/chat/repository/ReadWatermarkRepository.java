@@ -0,0 +1,14 @@
+package com.chat.repository;
+
+import com.chat.model.ReadWatermark;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ReadWatermarkRepository extends MongoRepository<ReadWatermark, String> {
+    List<ReadWatermark> findByConversationId(String conversationId);
+    List<ReadWatermark> findByConversationIdAndLastReadAtGreaterThanEqual(String conversationId, Instant timestamp);
+}
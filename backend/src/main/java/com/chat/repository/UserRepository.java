@@ -2,8 +2,10 @@ package com.chat.repository;
 
 import com.chat.model.User;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,4 +16,10 @@ public interface UserRepository extends MongoRepository<User, String> {
     List<User> findByUsernameContainingIgnoreCase(String username);
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
+    
+    @Query(value = "{ '_id': { $in: ?0 } }", fields = "{ 'username': 1 }")
+    List<User> findUsernamesByIdIn(Collection<String> ids);
+
+    @Query(value = "{ '_id': { $in: ?0 } }", fields = "{ 'username': 1, 'displayName': 1, 'avatar': 1 }")
+    List<User> findProfilesByIdIn(Collection<String> ids);
 }
@@ -0,0 +1,22 @@
+package com.chat.repository.reactive;
+
+import com.chat.model.Conversation;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@Repository
+public interface ReactiveConversationRepository extends ReactiveMongoRepository<Conversation, String> {
+    Flux<Conversation> findByParticipantsContainingOrderByUpdatedAtDesc(String userId);
+    
+    @Query("{ 'participants': { $all: ?0 }, 'type': ?1 }")
+    Mono<Conversation> findByParticipantsAndType(List<String> participants, Conversation.ConversationType type);
+    
+    Flux<Conversation> findByTypeOrderByUpdatedAtDesc(Conversation.ConversationType type);
+    
+    Mono<Conversation> findByGroupId(String groupId);
+}
@@ -0,0 +1,21 @@
+package com.chat.repository.reactive;
+
+import com.chat.model.Group;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ReactiveGroupRepository extends ReactiveMongoRepository<Group, String> {
+    @Query("{ 'members.userId': ?0 }")
+    Flux<Group> findByMembersUserId(String userId);
+    
+    Mono<Group> findByConversationId(String conversationId);
+    
+    Flux<Group> findByCreatedBy(String userId);
+    
+    @Query("{ 'admins': ?0 }")
+    Flux<Group> findByAdminsContaining(String userId);
+}
@@ -0,0 +1,14 @@
+package com.chat.repository.reactive;
+
+import com.chat.model.InboxEntry;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface ReactiveInboxEntryRepository extends ReactiveMongoRepository<InboxEntry, String> {
+    Flux<InboxEntry> findByUserIdAndRemovedFalseOrderByUpdatedAtDesc(String userId);
+    @Query(value = "{ 'userId': ?0, 'version': { $gt: ?1, $lte: ?2 } }", sort = "{ 'version': 1 }")
+    Flux<InboxEntry> findChanges(String userId, long afterVersion, long upToVersion);
+}
@@ -0,0 +1,17 @@
+package com.chat.repository.reactive;
+
+import com.chat.model.Message;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ReactiveMessageRepository extends ReactiveMongoRepository<Message, String> {
+    Flux<Message> findByConversationIdOrderByTimestampDesc(String conversationId, Pageable pageable);
+    Flux<Message> findByConversationIdAndDeletedFalseOrderByTimestampDesc(String conversationId, Pageable pageable);
+    Flux<Message> findByConversationIdOrderByTimestampAsc(String conversationId);
+    Flux<Message> findBySenderId(String senderId);
+    Mono<Long> countByConversationId(String conversationId);
+}
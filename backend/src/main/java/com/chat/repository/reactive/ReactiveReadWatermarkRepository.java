@@ -0,0 +1,14 @@
+package com.chat.repository.reactive;
+
+import com.chat.model.ReadWatermark;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.time.Instant;
+
+@Repository
+public interface ReactiveReadWatermarkRepository extends ReactiveMongoRepository<ReadWatermark, String> {
+    Flux<ReadWatermark> findByConversationId(String conversationId);
+    Flux<ReadWatermark> findByConversationIdAndLastReadAtGreaterThanEqual(String conversationId, Instant timestamp);
+}
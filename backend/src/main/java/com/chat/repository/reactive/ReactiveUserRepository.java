@@ -0,0 +1,16 @@
+package com.chat.repository.reactive;
+
+import com.chat.model.User;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ReactiveUserRepository extends ReactiveMongoRepository<User, String> {
+    Mono<User> findByUsername(String username);
+    Mono<User> findByEmail(String email);
+    Flux<User> findByUsernameContainingIgnoreCase(String username);
+    Mono<Boolean> existsByUsername(String username);
+    Mono<Boolean> existsByEmail(String email);
+}
@@ -0,0 +1,312 @@
+package com.chat.retention;
+
+import com.chat.model.Conversation;
+import com.chat.model.Message;
+import com.chat.repository.MessageRepository;
+import com.chat.service.InboxService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Purges soft-deleted and expired messages in small batches with a pause in between, so
+// compaction never competes with chat traffic for long, then repairs lastMessage on every
+// conversation it touched.
+@Service
+@Slf4j
+public class RetentionCompactor {
+
+    static final String STATE_COLLECTION = "retention_state";
+    // Checkpoints kept under the previous id predate per-message policy stamps and are ignored,
+    // so the first run after upgrading stamps every message once
+    static final String BACKFILL_STATE_ID = "expiry-stamp";
+
+    private final MongoTemplate mongoTemplate;
+    private final MessageRepository messageRepository;
+    private final InboxService inboxService;
+    private final RetentionPolicy retentionPolicy;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final boolean dryRun;
+    private final boolean ttlIndexEnabled;
+    private final int batchSize;
+    private final long pauseMillis;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter backfilledCounter;
+    private volatile RetentionStatus current;
+    private volatile RetentionStatus lastRun;
+
+    public RetentionCompactor(MongoTemplate mongoTemplate,
+                              MessageRepository messageRepository,
+                              InboxService inboxService,
+                              RetentionPolicy retentionPolicy,
+                              MeterRegistry meterRegistry,
+                              @Value("${chat.retention.enabled:false}") boolean enabled,
+                              @Value("${chat.retention.dry-run:true}") boolean dryRun,
+                              @Value("${chat.retention.ttl-index:false}") boolean ttlIndexEnabled,
+                              @Value("${chat.retention.batch-size:500}") int batchSize,
+                              @Value("${chat.retention.batch-pause-ms:200}") long pauseMillis) {
+        this.mongoTemplate = mongoTemplate;
+        this.messageRepository = messageRepository;
+        this.inboxService = inboxService;
+        this.retentionPolicy = retentionPolicy;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.dryRun = dryRun;
+        this.ttlIndexEnabled = ttlIndexEnabled;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+
+        this.backfilledCounter = Counter.builder("chat.retention.backfilled").register(meterRegistry);
+        Gauge.builder("chat.retention.running", running, r -> r.get() ? 1 : 0).register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.retention.interval-ms:600000}",
+            initialDelayString = "${chat.retention.initial-delay-ms:60000}")
+    public void scheduledRun() {
+        if (enabled) {
+            run(dryRun);
+        }
+    }
+
+    public boolean trigger(boolean dryRun) {
+        if (running.get()) {
+            return false;
+        }
+        Thread thread = new Thread(() -> run(dryRun), "retention-compactor");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    public RetentionStatus run(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            return current;
+        }
+
+        RetentionStatus status = new RetentionStatus(dryRun, Instant.now());
+        current = status;
+        try {
+            Instant now = Instant.now();
+            Set<String> touched = new HashSet<>();
+
+            status.setPhase("backfill");
+            backfillExpiry(status);
+
+            status.setPhase("soft-deleted");
+            purge("soft-deleted", () -> Criteria.where("deleted").is(true)
+                    .and("deletedAt").lt(now.minus(retentionPolicy.getSoftDeleteGrace())), status, touched);
+
+            if (!ttlIndexEnabled) {
+                // Only expiries computed under the current policy count; anything stamped under
+                // another one waits for the backfill to re-evaluate it
+                String policy = retentionPolicy.signature();
+                status.setPhase("expired");
+                purge("expired", () -> Criteria.where("expiresAt").lt(now).and("expiryPolicy").is(policy),
+                        status, touched);
+            }
+
+            if (!dryRun) {
+                status.setPhase("repair");
+                repairLastMessages(touched, status);
+            }
+
+            status.setPhase("done");
+            log.info("Retention run finished (dryRun={}): purged {}, backfilled {}, repaired {} conversations",
+                    dryRun, status.getPurged(), status.getBackfilled(), status.getConversationsRepaired());
+        } catch (RuntimeException e) {
+            status.setPhase("failed: " + e.getMessage());
+            log.error("Retention run failed: {}", e.getMessage(), e);
+        } finally {
+            status.setFinishedAt(Instant.now());
+            lastRun = status;
+            running.set(false);
+        }
+        return status;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public RetentionStatus getCurrent() {
+        return running.get() ? current : null;
+    }
+
+    public RetentionStatus getLastRun() {
+        return lastRun;
+    }
+
+    // Stamps expiresAt, with the policy signature it was computed under, on every message that
+    // has none or was stamped under another policy: messages written before retention existed,
+    // saved as keep-forever, or stamped by a node still running an older policy.
+    // The walk goes forward over _id from a checkpoint in retention_state, so each run only
+    // reads messages added since the last one and a batch never rescans from the top. A
+    // policy change restarts the walk so every earlier stamp, not only keep-forever ones, is
+    // recomputed before the expired purge trusts it. With the TTL index Mongo deletes on
+    // expiresAt alone, so a shortened stamp is only safe once the walk has rewritten it.
+    private void backfillExpiry(RetentionStatus status) {
+        Document state = mongoTemplate.findById(BACKFILL_STATE_ID, Document.class, STATE_COLLECTION);
+        String policy = retentionPolicy.signature();
+        String lastId = state != null && policy.equals(state.getString("policy")) ? state.getString("lastId") : null;
+
+        String upperId = newestMessageId();
+        if (upperId == null || upperId.equals(lastId)) {
+            return;
+        }
+        if (status.isDryRun()) {
+            status.setBackfilled(mongoTemplate.count(Query.query(backfillRange(lastId, upperId, policy)), Message.class));
+            return;
+        }
+
+        while (true) {
+            Query query = Query.query(backfillRange(lastId, upperId, policy))
+                    .with(Sort.by(Sort.Direction.ASC, "_id"))
+                    .limit(batchSize);
+            query.fields().include("_id").include("conversationId").include("timestamp");
+            List<Message> batch = mongoTemplate.find(query, Message.class);
+            if (batch.isEmpty()) {
+                saveBackfillCheckpoint(policy, upperId);
+                return;
+            }
+
+            Map<String, Conversation.ConversationType> types = conversationTypes(batch.stream()
+                    .map(Message::getConversationId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet()));
+
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Message.class);
+            for (Message message : batch) {
+                Conversation.ConversationType type = types.get(message.getConversationId());
+                Instant expiresAt = type != null ? retentionPolicy.expiresAt(type, message.getTimestamp()) : null;
+                bulk.updateOne(Query.query(Criteria.where("_id").is(message.getId())),
+                        new Update().set("expiresAt", expiresAt).set("expiryPolicy", policy));
+            }
+            bulk.execute();
+
+            lastId = batch.get(batch.size() - 1).getId();
+            saveBackfillCheckpoint(policy, lastId);
+            status.setBackfilled(status.getBackfilled() + batch.size());
+            backfilledCounter.increment(batch.size());
+            pause();
+        }
+    }
+
+    // expiresAt: null matches both a missing field and an explicit keep-forever null, and
+    // $ne matches messages stamped before expiryPolicy was recorded
+    private static Criteria backfillRange(String afterId, String upToId, String policy) {
+        Criteria id = Criteria.where("_id").lte(upToId);
+        if (afterId != null) {
+            id = Criteria.where("_id").gt(afterId).lte(upToId);
+        }
+        return new Criteria().andOperator(id, new Criteria().orOperator(
+                Criteria.where("expiresAt").is(null),
+                Criteria.where("expiryPolicy").ne(policy)));
+    }
+
+    private String newestMessageId() {
+        Query query = new Query().with(Sort.by(Sort.Direction.DESC, "_id")).limit(1);
+        query.fields().include("_id");
+        Message newest = mongoTemplate.findOne(query, Message.class);
+        return newest != null ? newest.getId() : null;
+    }
+
+    private void saveBackfillCheckpoint(String policy, String lastId) {
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(BACKFILL_STATE_ID)),
+                new Update().set("policy", policy).set("lastId", lastId).set("updatedAt", Instant.now()),
+                STATE_COLLECTION);
+    }
+
+    private void purge(String reason, Supplier<Criteria> criteria, RetentionStatus status, Set<String> touched) {
+        if (status.isDryRun()) {
+            status.addPurged(reason, mongoTemplate.count(Query.query(criteria.get()), Message.class));
+            return;
+        }
+
+        Counter purgedCounter = Counter.builder("chat.retention.purged")
+                .tag("reason", reason)
+                .register(meterRegistry);
+
+        while (true) {
+            Query query = Query.query(criteria.get()).limit(batchSize);
+            query.fields().include("_id").include("conversationId");
+            List<Message> batch = mongoTemplate.find(query, Message.class);
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            List<String> ids = batch.stream().map(Message::getId).collect(Collectors.toList());
+            // Re-check the criteria in the delete so a message restored in between survives
+            long deleted = mongoTemplate.remove(
+                    Query.query(new Criteria().andOperator(Criteria.where("_id").in(ids), criteria.get())),
+                    Message.class).getDeletedCount();
+
+            batch.stream().map(Message::getConversationId).filter(Objects::nonNull).forEach(touched::add);
+            status.addPurged(reason, deleted);
+            purgedCounter.increment(deleted);
+            pause();
+        }
+    }
+
+    // Only replaces a lastMessage older than the moment the latest survivor was looked up, so
+    // a message sent while the repair runs is never overwritten by an older one
+    private void repairLastMessages(Set<String> conversationIds, RetentionStatus status) {
+        for (String conversationId : conversationIds) {
+            Instant observedAt = Instant.now();
+            Conversation.LastMessage lastMessage = messageRepository
+                    .findFirstByConversationIdAndDeletedFalseOrderByTimestampDesc(conversationId)
+                    .map(latest -> Conversation.LastMessage.builder()
+                            .content(latest.getContent())
+                            .senderId(latest.getSenderId())
+                            .timestamp(latest.getTimestamp())
+                            .build())
+                    .orElse(null);
+            Update update = lastMessage != null
+                    ? new Update().set("lastMessage", lastMessage)
+                    : new Update().unset("lastMessage");
+            Criteria unchanged = Criteria.where("_id").is(conversationId).orOperator(
+                    Criteria.where("lastMessage").is(null),
+                    Criteria.where("lastMessage.timestamp").lt(observedAt));
+            long modified = mongoTemplate.updateFirst(Query.query(unchanged), update, Conversation.class)
+                    .getModifiedCount();
+            status.setConversationsRepaired(status.getConversationsRepaired() + modified);
+            // The sidebar reads the inbox copy; repaired even when the conversation already was
+            inboxService.onLastMessageRepaired(conversationId, lastMessage, observedAt);
+        }
+    }
+
+    private Map<String, Conversation.ConversationType> conversationTypes(Set<String> conversationIds) {
+        Query query = Query.query(Criteria.where("_id").in(conversationIds));
+        query.fields().include("_id").include("type");
+        Map<String, Conversation.ConversationType> types = new HashMap<>();
+        mongoTemplate.find(query, Conversation.class).forEach(c -> types.put(c.getId(), c.getType()));
+        return types;
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Retention run interrupted", e);
+        }
+    }
+}
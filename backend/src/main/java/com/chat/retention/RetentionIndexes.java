@@ -0,0 +1,40 @@
+package com.chat.retention;
+
+import com.chat.index.IndexContributor;
+import com.chat.model.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+// With ttl-index=true Mongo's TTL monitor removes expired messages itself; otherwise the
+// compactor deletes them in throttled batches. Switching modes requires dropping the
+// existing expiresAt index first, since both share the same key.
+@Component
+public class RetentionIndexes implements IndexContributor {
+
+    private final boolean ttlIndexEnabled;
+
+    public RetentionIndexes(@Value("${chat.retention.ttl-index:false}") boolean ttlIndexEnabled) {
+        this.ttlIndexEnabled = ttlIndexEnabled;
+    }
+
+    @Override
+    public Class<?> entityType() {
+        return Message.class;
+    }
+
+    @Override
+    public List<IndexDefinition> indexes() {
+        Index expiresAt = ttlIndexEnabled
+                ? new Index().on("expiresAt", Sort.Direction.ASC).named("expiresAt_ttl").expire(Duration.ZERO)
+                : new Index().on("expiresAt", Sort.Direction.ASC).named("expiresAt").sparse();
+        return List.of(
+                expiresAt,
+                new Index().on("deletedAt", Sort.Direction.ASC).named("deletedAt").sparse());
+    }
+}
@@ -0,0 +1,46 @@
+package com.chat.retention;
+
+import com.chat.model.Conversation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@Component
+public class RetentionPolicy {
+
+    private final Duration privateRetention;
+    private final Duration groupRetention;
+    private final Duration softDeleteGrace;
+
+    public RetentionPolicy(@Value("${chat.retention.private:0}") Duration privateRetention,
+                           @Value("${chat.retention.group:0}") Duration groupRetention,
+                           @Value("${chat.retention.soft-delete-grace:7d}") Duration softDeleteGrace) {
+        this.privateRetention = privateRetention;
+        this.groupRetention = groupRetention;
+        this.softDeleteGrace = softDeleteGrace;
+    }
+
+    // Zero or negative means messages of that type are kept forever
+    public Duration retentionFor(Conversation.ConversationType type) {
+        return type == Conversation.ConversationType.GROUP ? groupRetention : privateRetention;
+    }
+
+    public Instant expiresAt(Conversation.ConversationType type, Instant timestamp) {
+        Duration retention = retentionFor(type);
+        if (timestamp == null || retention.isZero() || retention.isNegative()) {
+            return null;
+        }
+        return timestamp.plus(retention);
+    }
+
+    // Identifies the expiry rules; stamped expiries are only valid for the signature they were computed under
+    public String signature() {
+        return "private=" + privateRetention + ",group=" + groupRetention;
+    }
+
+    public Duration getSoftDeleteGrace() {
+        return softDeleteGrace;
+    }
+}
@@ -0,0 +1,34 @@
+package com.chat.retention;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Data
+public class RetentionStatus {
+    private final boolean dryRun;
+    private final Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String phase = "starting";
+    private volatile long backfilled;
+    private volatile long conversationsRepaired;
+    // Messages deleted per reason, or in dry-run mode the number that would be deleted
+    private final Map<String, Long> purged = new ConcurrentHashMap<>();
+
+    void addPurged(String reason, long count) {
+        purged.merge(reason, count, Long::sum);
+    }
+
+    public long getTotalPurged() {
+        return purged.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public double getPurgeRatePerSecond() {
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+        return dryRun ? 0 : getTotalPurged() * 1000.0 / millis;
+    }
+}
@@ -0,0 +1,218 @@
+package com.chat.service;
+
+import com.chat.model.AttachmentBlob;
+import com.chat.model.Message;
+import com.chat.repository.AttachmentBlobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+@Service
+@Slf4j
+public class AttachmentService {
+
+    public static final String URL_PREFIX = "/api/attachments/";
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final String OCTET_STREAM = "application/octet-stream";
+    private static final int SNIFF_BYTES = 12;
+
+    // Raster formats browsers render without running script; everything else is served as a download
+    private static final Set<String> INLINE_TYPES = Set.of("image/png", "image/jpeg", "image/gif", "image/webp");
+
+    private final AttachmentBlobRepository attachmentBlobRepository;
+    private final Path root;
+    private final Path uploadDir;
+    private final long maxBytes;
+
+    public AttachmentService(AttachmentBlobRepository attachmentBlobRepository,
+                             @Value("${chat.attachments.directory:./data/attachments}") String directory,
+                             @Value("${chat.attachments.max-bytes:104857600}") long maxBytes) {
+        this.attachmentBlobRepository = attachmentBlobRepository;
+        this.root = Paths.get(directory);
+        this.uploadDir = root.resolve("tmp");
+        this.maxBytes = maxBytes;
+    }
+
+    // Streams the body to a temp file while hashing it, then moves it under its hash.
+    // Identical content uploaded twice is stored once. Image types come from the leading
+    // bytes rather than the client, so every uploader of the same bytes gets the same type.
+    public AttachmentBlob store(InputStream in, String contentType, String uploadedBy) throws IOException {
+        Files.createDirectories(uploadDir);
+        Path tmp = Files.createTempFile(uploadDir, "upload-", ".part");
+
+        MessageDigest digest = sha256();
+        byte[] head = new byte[SNIFF_BYTES];
+        int headLength = 0;
+        long size = 0;
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (headLength < SNIFF_BYTES) {
+                    int copied = Math.min(read, SNIFF_BYTES - headLength);
+                    System.arraycopy(buffer, 0, head, headLength, copied);
+                    headLength += copied;
+                }
+                size += read;
+                if (size > maxBytes) {
+                    throw new RuntimeException("Attachment exceeds the maximum size of " + maxBytes + " bytes");
+                }
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        String hash = HexFormat.of().formatHex(digest.digest());
+        Path target = pathFor(hash);
+        if (Files.exists(target)) {
+            Files.delete(tmp);
+        } else {
+            Files.createDirectories(target.getParent());
+            // Same hash means same bytes, so losing a race to a concurrent upload is harmless
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        long storedSize = size;
+        String storedType = contentTypeFor(head, headLength, contentType);
+        return attachmentBlobRepository.findById(hash)
+                .orElseGet(() -> attachmentBlobRepository.save(AttachmentBlob.builder()
+                        .id(hash)
+                        .contentType(storedType)
+                        .size(storedSize)
+                        .uploadedBy(uploadedBy)
+                        .createdAt(Instant.now())
+                        .build()));
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public Optional<AttachmentBlob> find(String hash) {
+        if (!HASH_PATTERN.matcher(hash).matches() || !Files.exists(pathFor(hash))) {
+            return Optional.empty();
+        }
+        return attachmentBlobRepository.findById(hash);
+    }
+
+    public static boolean isInlineSafe(String contentType) {
+        return contentType != null && INLINE_TYPES.contains(contentType);
+    }
+
+    // Empty for inline-safe images; everything else is a download, named by the client's label or the hash
+    public static Optional<ContentDisposition> dispositionFor(AttachmentBlob blob, String name) {
+        if (isInlineSafe(blob.getContentType())) {
+            return Optional.empty();
+        }
+        return Optional.of(ContentDisposition.attachment()
+                .filename(name != null && !name.isBlank() ? name : blob.getId(), StandardCharsets.UTF_8)
+                .build());
+    }
+
+    // A detected image type wins; a claimed image that doesn't look like one, or anything
+    // unparseable, is stored as opaque bytes. Other declared types are kept for display only.
+    static String contentTypeFor(byte[] head, int length, String declared) {
+        String detected = detectImageType(head, length);
+        if (detected != null) {
+            return detected;
+        }
+        if (declared == null) {
+            return OCTET_STREAM;
+        }
+        try {
+            MediaType type = MediaType.parseMediaType(declared);
+            if (type.isWildcardType() || type.isWildcardSubtype() || "image".equals(type.getType())) {
+                return OCTET_STREAM;
+            }
+            return type.getType() + "/" + type.getSubtype();
+        } catch (InvalidMediaTypeException e) {
+            return OCTET_STREAM;
+        }
+    }
+
+    private static String detectImageType(byte[] head, int length) {
+        if (startsWith(head, length, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(head, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, 0, 'G', 'I', 'F', '8', '7', 'a')
+                || startsWith(head, length, 0, 'G', 'I', 'F', '8', '9', 'a')) {
+            return "image/gif";
+        }
+        if (startsWith(head, length, 0, 'R', 'I', 'F', 'F') && startsWith(head, length, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int offset, int... magic) {
+        if (length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[offset + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Path pathFor(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    // Checks that every attachment on an outgoing message points at stored content and
+    // takes size/type from the store rather than trusting the client.
+    public List<Message.Attachment> resolve(List<Message.Attachment> attachments) {
+        List<Message.Attachment> resolved = new ArrayList<>();
+        if (attachments == null) {
+            return resolved;
+        }
+        for (Message.Attachment attachment : attachments) {
+            String url = attachment.getUrl();
+            String hash = url != null && url.startsWith(URL_PREFIX) ? url.substring(URL_PREFIX.length()) : "";
+            AttachmentBlob blob = find(hash)
+                    .orElseThrow(() -> new RuntimeException("Attachment not found: " + url));
+            resolved.add(Message.Attachment.builder()
+                    .type(blob.getContentType())
+                    .url(URL_PREFIX + blob.getId())
+                    .name(attachment.getName())
+                    .size(blob.getSize())
+                    .build());
+        }
+        return resolved;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
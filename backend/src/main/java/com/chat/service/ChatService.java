@@ -1,73 +1,192 @@
 package com.chat.service;
 
+import com.chat.dispatch.SendDeduplicator;
 import com.chat.dto.ChatMessage;
 import com.chat.model.*;
 import com.chat.repository.*;
+import com.chat.retention.RetentionPolicy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class ChatService {
 
     private final MessageRepository messageRepository;
     private final ConversationRepository conversationRepository;
     private final UserRepository userRepository;
     private final GroupRepository groupRepository;
+    private final ReadReceiptService readReceiptService;
+    private final MongoTemplate mongoTemplate;
+    private final AttachmentService attachmentService;
+    private final RetentionPolicy retentionPolicy;
+    private final InboxService inboxService;
+    private final SendDeduplicator sendDeduplicator;
 
     public Message saveMessage(ChatMessage chatMessage) {
-        Message message = Message.builder()
+        return persistMessage(buildMessage(chatMessage));
+    }
+
+    public Message buildMessage(ChatMessage chatMessage) {
+        List<Message.Attachment> attachments = attachmentService.resolve(chatMessage.getAttachments());
+        Message.MessageType messageType = Message.MessageType.TEXT;
+        if (!attachments.isEmpty()) {
+            messageType = attachments.stream().allMatch(a -> a.getType().startsWith("image/"))
+                    ? Message.MessageType.IMAGE
+                    : Message.MessageType.FILE;
+        }
+
+        return Message.builder()
                 .conversationId(chatMessage.getConversationId())
                 .senderId(chatMessage.getSenderId())
                 .senderName(chatMessage.getSenderName())
                 .content(chatMessage.getContent())
-                .messageType(Message.MessageType.TEXT)
+                .clientMessageId(chatMessage.getClientMessageId())
+                .messageType(messageType)
+                .attachments(attachments)
                 .timestamp(Instant.now())
                 .createdAt(Instant.now())
-                .readBy(new ArrayList<>())
                 .edited(false)
                 .deleted(false)
                 .build();
+    }
+
+    public Message persistMessage(Message message) {
+        Optional<Conversation> conversation = conversationRepository.findById(message.getConversationId());
+        conversation.ifPresent(conv -> {
+            message.setExpiresAt(retentionPolicy.expiresAt(conv.getType(), message.getTimestamp()));
+            message.setExpiryPolicy(retentionPolicy.signature());
+        });
 
         Message saved = messageRepository.save(message);
 
         // Update conversation's last message
-        conversationRepository.findById(chatMessage.getConversationId())
-                .ifPresent(conv -> {
-                    conv.setLastMessage(Conversation.LastMessage.builder()
-                            .content(chatMessage.getContent())
-                            .senderId(chatMessage.getSenderId())
-                            .timestamp(Instant.now())
-                            .build());
-                    conv.setUpdatedAt(Instant.now());
-                    
-                    // Increment unread count for other participants
-                    Map<String, Integer> unreadCount = conv.getUnreadCount();
-                    if (unreadCount == null) {
-                        unreadCount = new HashMap<>();
-                    }
-                    for (String participantId : conv.getParticipants()) {
-                        if (!participantId.equals(chatMessage.getSenderId())) {
-                            unreadCount.put(participantId, unreadCount.getOrDefault(participantId, 0) + 1);
-                        }
-                    }
-                    conv.setUnreadCount(unreadCount);
-                    
-                    conversationRepository.save(conv);
-                });
+        conversation.ifPresent(conv -> {
+            conv.setLastMessage(Conversation.LastMessage.builder()
+                    .content(message.getContent())
+                    .senderId(message.getSenderId())
+                    .timestamp(message.getTimestamp())
+                    .build());
+            conv.setUpdatedAt(Instant.now());
+            
+            // Increment unread count for other participants
+            Map<String, Integer> unreadCount = conv.getUnreadCount();
+            if (unreadCount == null) {
+                unreadCount = new HashMap<>();
+            }
+            for (String participantId : conv.getParticipants()) {
+                if (!participantId.equals(message.getSenderId())) {
+                    unreadCount.put(participantId, unreadCount.getOrDefault(participantId, 0) + 1);
+                }
+            }
+            conv.setUnreadCount(unreadCount);
+            
+            conversationRepository.save(conv);
+            inboxService.onMessage(conv, message.getSenderId());
+        });
 
         return saved;
     }
 
+    // Replay-safe variant used by the WAL replicator: the id is assigned before the
+    // message is logged, so a message that already reached Mongo is left untouched.
+    // The send was broadcast before it got here, and the in-memory window only knows this
+    // node's recent sends. A resend of a message stored through another node, or before a
+    // restart, is therefore first caught here by the unique index. The stored original is
+    // then returned so the replicator can correct the broadcast.
+    public Optional<Message> persistMessageIfAbsent(Message message) {
+        if (messageRepository.existsById(message.getId())) {
+            return Optional.empty();
+        }
+        try {
+            persistMessage(message);
+            return Optional.empty();
+        } catch (DuplicateKeyException e) {
+            if (message.getClientMessageId() == null) {
+                throw e;
+            }
+            Message original = messageRepository.findBySenderIdAndClientMessageId(
+                            message.getSenderId(), message.getClientMessageId())
+                    .orElseThrow(() -> e);
+            log.warn("Dropped duplicate send {} from {} (message {}, original {}) during replication",
+                    message.getClientMessageId(), message.getSenderId(), message.getId(), original.getId());
+            // Later retries are answered with the original, not the dropped copy
+            rememberSend(original);
+            return Optional.of(original);
+        }
+    }
+
+    // Returns the stored original when this send is a retry of one already accepted. The
+    // in-memory filter rules out almost every new send, so Mongo is only asked when the
+    // filter matched but the recent-send window no longer holds the message.
+    public Optional<Message> findResend(String senderId, String clientMessageId) {
+        if (senderId == null || clientMessageId == null
+                || !sendDeduplicator.mightContain(senderId, clientMessageId)) {
+            return Optional.empty();
+        }
+        Optional<Message> recent = sendDeduplicator.findRecent(senderId, clientMessageId);
+        if (recent.isPresent()) {
+            return recent;
+        }
+        Optional<Message> stored = messageRepository.findBySenderIdAndClientMessageId(senderId, clientMessageId);
+        if (stored.isEmpty()) {
+            sendDeduplicator.recordFalsePositive();
+        }
+        // Further retries in the same burst are then answered from memory
+        stored.ifPresent(this::rememberSend);
+        return stored;
+    }
+
+    public void rememberSend(Message message) {
+        if (message.getSenderId() != null && message.getClientMessageId() != null) {
+            sendDeduplicator.record(message.getSenderId(), message.getClientMessageId(), message);
+        }
+    }
+
+    // The unique (senderId, clientMessageId) index catches resends the in-memory window
+    // missed (after a restart, or sent to another node); the original is returned instead
+    public Message persistOrGetOriginal(Message message) {
+        try {
+            return persistMessage(message);
+        } catch (DuplicateKeyException e) {
+            if (message.getClientMessageId() == null) {
+                throw e;
+            }
+            return messageRepository.findBySenderIdAndClientMessageId(
+                            message.getSenderId(), message.getClientMessageId())
+                    .orElseThrow(() -> e);
+        }
+    }
+
     public List<Message> getMessages(String conversationId, int page, int size) {
-        return messageRepository.findByConversationIdOrderByTimestampDesc(
+        return messageRepository.findByConversationIdAndDeletedFalseOrderByTimestampDesc(
                 conversationId, PageRequest.of(page, size));
     }
 
+    // Streams straight off the Mongo cursor; the caller must close the stream
+    public Stream<Message> streamHistory(String conversationId, Instant before, String beforeId, int limit) {
+        if (before != null && beforeId != null) {
+            return messageRepository.findHistoryPageBefore(conversationId, before, beforeId, PageRequest.of(0, limit));
+        }
+        return messageRepository.findByConversationIdAndDeletedFalseAndTimestampBeforeOrderByTimestampDesc(
+                conversationId, before != null ? before : Instant.now().plusSeconds(1), PageRequest.of(0, limit));
+    }
+
     public Conversation getOrCreatePrivateConversation(String user1Id, String user2Id) {
         List<String> participants = Arrays.asList(user1Id, user2Id);
         Collections.sort(participants);
@@ -82,7 +201,9 @@ public class ChatService {
                             .createdAt(Instant.now())
                             .updatedAt(Instant.now())
                             .build();
-                    return conversationRepository.save(conv);
+                    Conversation saved = conversationRepository.save(conv);
+                    inboxService.onConversationCreated(saved);
+                    return saved;
                 });
     }
 
@@ -117,51 +238,49 @@ public class ChatService {
     }
 
     public Group createGroup(String name, String creatorId, List<String> memberIds) {
-        User creator = userRepository.findById(creatorId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        // Resolve the creator and every member in one projected query
+        Set<String> requestedIds = new LinkedHashSet<>();
+        requestedIds.add(creatorId);
+        if (memberIds != null) {
+            requestedIds.addAll(memberIds);
+        }
+        Map<String, String> usernames = resolveUsernames(requestedIds);
+        if (!usernames.containsKey(creatorId)) {
+            throw new RuntimeException("User not found");
+        }
 
+        Instant now = Instant.now();
         List<Group.GroupMember> members = new ArrayList<>();
-        members.add(Group.GroupMember.builder()
-                .userId(creatorId)
-                .username(creator.getUsername())
-                .joinedAt(Instant.now())
-                .role(Group.MemberRole.ADMIN)
-                .build());
-
-        Set<String> addedMembers = new HashSet<>();
-        addedMembers.add(creatorId);
-
-        for (String memberId : memberIds) {
-            if (!addedMembers.contains(memberId)) {
-                userRepository.findById(memberId).ifPresent(member -> {
-                    members.add(Group.GroupMember.builder()
-                            .userId(memberId)
-                            .username(member.getUsername())
-                            .joinedAt(Instant.now())
-                            .role(Group.MemberRole.MEMBER)
-                            .build());
-                    addedMembers.add(memberId);
-                });
+        for (String memberId : requestedIds) {
+            if (usernames.containsKey(memberId)) {
+                members.add(Group.GroupMember.builder()
+                        .userId(memberId)
+                        .username(usernames.get(memberId))
+                        .joinedAt(now)
+                        .role(memberId.equals(creatorId) ? Group.MemberRole.ADMIN : Group.MemberRole.MEMBER)
+                        .build());
             }
         }
 
-        // Create conversation for group
-        List<String> participantIds = new ArrayList<>(addedMembers);
+        // Assign the group ID up front so the conversation is written once, already linked
+        String groupId = new ObjectId().toHexString();
 
         Conversation conversation = Conversation.builder()
                 .type(Conversation.ConversationType.GROUP)
-                .participants(participantIds)
+                .participants(new ArrayList<>(usernames.keySet()))
+                .groupId(groupId)
                 .groupName(name)
                 .unreadCount(new HashMap<>())
-                .createdAt(Instant.now())
-                .updatedAt(Instant.now())
+                .createdAt(now)
+                .updatedAt(now)
                 .build();
         conversation = conversationRepository.save(conversation);
 
         Group group = Group.builder()
+                .id(groupId)
                 .name(name)
                 .createdBy(creatorId)
-                .admins(List.of(creatorId))
+                .admins(new ArrayList<>(List.of(creatorId)))
                 .members(members)
                 .conversationId(conversation.getId())
                 .settings(Group.GroupSettings.builder()
@@ -169,17 +288,119 @@ public class ChatService {
                         .onlyAdminsCanAddMembers(false)
                         .muteNotifications(false)
                         .build())
-                .createdAt(Instant.now())
-                .updatedAt(Instant.now())
+                .createdAt(now)
+                .updatedAt(now)
                 .build();
 
-        group = groupRepository.save(group);
+        Group saved = groupRepository.save(group);
+        inboxService.onConversationCreated(conversation);
+        return saved;
+    }
+
+    public Group addMembersToGroup(String groupId, List<String> userIds) {
+        requireUserIds(userIds);
+        Group group = groupRepository.findMembershipById(groupId)
+                .orElseThrow(() -> new RuntimeException("Group not found"));
+
+        Set<String> candidates = new LinkedHashSet<>(userIds);
+        group.getMembers().forEach(m -> candidates.remove(m.getUserId()));
+        Map<String, String> usernames = resolveUsernames(candidates);
+        if (usernames.isEmpty()) {
+            return groupRepository.findById(groupId)
+                    .orElseThrow(() -> new RuntimeException("Group not found"));
+        }
+
+        Instant now = Instant.now();
+        List<Group.GroupMember> newMembers = new ArrayList<>();
+        usernames.forEach((userId, username) -> newMembers.add(Group.GroupMember.builder()
+                .userId(userId)
+                .username(username)
+                .joinedAt(now)
+                .role(Group.MemberRole.MEMBER)
+                .build()));
+        List<String> newIds = new ArrayList<>(usernames.keySet());
+
+        // Embedded members can't be deduplicated by $addToSet (joinedAt differs), so the
+        // $push is guarded on none of the new IDs being present yet
+        Group updated = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(groupId).and("members.userId").nin(newIds)),
+                new Update().push("members").each(newMembers.toArray()).set("updatedAt", now),
+                FindAndModifyOptions.options().returnNew(true),
+                Group.class);
+        if (updated == null) {
+            throw new RuntimeException("Group membership changed concurrently, please retry");
+        }
 
-        // Update conversation with group ID
-        conversation.setGroupId(group.getId());
-        conversationRepository.save(conversation);
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(updated.getConversationId())),
+                new Update().addToSet("participants").each(newIds.toArray()),
+                Conversation.class);
+        inboxService.onMembersAdded(updated.getConversationId(), newIds);
 
-        return group;
+        return updated;
+    }
+
+    public Group removeMembersFromGroup(String groupId, List<String> userIds, String requesterId) {
+        requireUserIds(userIds);
+        if (requesterId == null) {
+            throw new RuntimeException("requesterId is required");
+        }
+        Group group = groupRepository.findMembershipById(groupId)
+                .orElseThrow(() -> new RuntimeException("Group not found"));
+
+        boolean removingSelfOnly = userIds.size() == 1 && userIds.get(0).equals(requesterId);
+        if (!group.getAdmins().contains(requesterId) && !removingSelfOnly) {
+            throw new RuntimeException("Only admins can remove members");
+        }
+
+        Object[] ids = userIds.toArray();
+        Group updated = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(groupId)),
+                new Update()
+                        .pull("members", new Document("userId", new Document("$in", userIds)))
+                        .pullAll("admins", ids)
+                        .set("updatedAt", Instant.now()),
+                FindAndModifyOptions.options().returnNew(true),
+                Group.class);
+        if (updated == null) {
+            throw new RuntimeException("Group not found");
+        }
+
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(updated.getConversationId())),
+                new Update().pullAll("participants", ids),
+                Conversation.class);
+        inboxService.onMembersRemoved(updated.getConversationId(), userIds);
+
+        return updated;
+    }
+
+    // Bodies arrive as untyped JSON, so the list may be missing or hold non-string values
+    private static void requireUserIds(List<?> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            throw new RuntimeException("userIds must be a non-empty list");
+        }
+        for (Object userId : userIds) {
+            if (!(userId instanceof String id) || id.isBlank()) {
+                throw new RuntimeException("userIds must contain only user IDs");
+            }
+        }
+    }
+
+    private Map<String, String> resolveUsernames(Collection<String> userIds) {
+        Map<String, String> usernames = new LinkedHashMap<>();
+        if (userIds.isEmpty()) {
+            return usernames;
+        }
+        Map<String, String> found = new HashMap<>();
+        userRepository.findUsernamesByIdIn(userIds).forEach(u -> found.put(u.getId(), u.getUsername()));
+        // Keep the caller's ordering so the creator stays first
+        for (String userId : userIds) {
+            if (found.containsKey(userId)) {
+                usernames.put(userId, found.get(userId));
+            }
+        }
+        return usernames;
     }
 
     public Group addMemberToGroup(String groupId, String userId) {
@@ -213,6 +434,7 @@ public class ChatService {
                         conversationRepository.save(conv);
                     }
                 });
+        inboxService.onMembersAdded(group.getConversationId(), List.of(userId));
 
         return groupRepository.save(group);
     }
@@ -236,6 +458,7 @@ public class ChatService {
                     conv.getParticipants().remove(userId);
                     conversationRepository.save(conv);
                 });
+        inboxService.onMembersRemoved(group.getConversationId(), List.of(userId));
 
         return groupRepository.save(group);
     }
@@ -245,6 +468,8 @@ public class ChatService {
     }
 
     public void markConversationAsRead(String conversationId, String userId) {
+        readReceiptService.markRead(conversationId, userId, Instant.now());
+
         conversationRepository.findById(conversationId).ifPresent(conv -> {
             Map<String, Integer> unreadCount = conv.getUnreadCount();
             if (unreadCount != null) {
@@ -253,5 +478,6 @@ public class ChatService {
                 conversationRepository.save(conv);
             }
         });
+        inboxService.onRead(conversationId, userId);
     }
 }
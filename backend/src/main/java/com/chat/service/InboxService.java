@@ -0,0 +1,352 @@
+package com.chat.service;
+
+import com.chat.model.Conversation;
+import com.chat.model.InboxEntry;
+import com.chat.model.User;
+import com.chat.repository.ConversationRepository;
+import com.chat.repository.InboxEntryRepository;
+import com.chat.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+// Maintains the per-user inbox (fan-out on write) so loading the sidebar is a single
+// indexed read instead of a conversation scan plus a user lookup per row.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InboxService {
+
+    static final String STATE_COLLECTION = "inbox_state";
+
+    private final InboxEntryRepository inboxEntryRepository;
+    private final ConversationRepository conversationRepository;
+    private final UserRepository userRepository;
+    private final MongoTemplate mongoTemplate;
+
+    private final AtomicLong lastVersion = new AtomicLong();
+    // Versions handed out whose writes haven't finished yet
+    private final NavigableSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    // Users whose inbox is known to be built, so loads skip the marker lookup
+    private final Set<String> builtUsers = ConcurrentHashMap.newKeySet();
+
+    // ==================== Reads ====================
+
+    // The rows plus the version to read changes from. The version is taken before the rows,
+    // so a write racing this read lands above it and the first changes read picks it up.
+    public Map<String, Object> getInbox(String userId) {
+        long version = safeVersion();
+        ensureBuilt(userId);
+        return inboxOf(version, inboxEntryRepository.findByUserIdAndRemovedFalseOrderByUpdatedAtDesc(userId));
+    }
+
+    public Map<String, Object> inboxOf(long version, List<InboxEntry> entries) {
+        return Map.of("version", version, "entries", entries);
+    }
+
+    // Conversations that predate the inbox have no rows; build them all on the user's first
+    // read. Write-side fan-out only covers new activity, so rows existing is no sign the
+    // user's older conversations were ever added: a per-user marker records the build.
+    public void ensureBuilt(String userId) {
+        if (builtUsers.contains(userId)) {
+            return;
+        }
+        if (!mongoTemplate.exists(Query.query(Criteria.where("_id").is(userId)), STATE_COLLECTION)) {
+            rebuild(userId);
+            markBuilt(userId);
+        }
+        builtUsers.add(userId);
+    }
+
+    public Map<String, Object> getChanges(String userId, long sinceVersion) {
+        long upTo = safeVersion();
+        if (upTo <= sinceVersion) {
+            return changesSince(sinceVersion, List.of());
+        }
+        return changesSince(sinceVersion, inboxEntryRepository.findChanges(userId, sinceVersion, upTo));
+    }
+
+    public Map<String, Object> changesSince(long sinceVersion, List<InboxEntry> changes) {
+        long version = changes.isEmpty() ? sinceVersion : changes.get(changes.size() - 1).getVersion();
+        return Map.of("version", version, "changes", changes);
+    }
+
+    // ==================== Write-side maintenance ====================
+
+    public void onConversationCreated(Conversation conversation) {
+        writeEntries(conversation, conversation.getParticipants());
+    }
+
+    public void onMessage(Conversation conversation, String senderId) {
+        Criteria inConversation = Criteria.where("conversationId").is(conversation.getId()).and("removed").is(false);
+
+        write(version -> {
+            mongoTemplate.updateMulti(Query.query(inConversation),
+                    new Update()
+                            .set("lastMessage", conversation.getLastMessage())
+                            .set("updatedAt", conversation.getUpdatedAt())
+                            .set("version", version),
+                    InboxEntry.class);
+            mongoTemplate.updateMulti(
+                    Query.query(Criteria.where("conversationId").is(conversation.getId())
+                            .and("removed").is(false)
+                            .and("userId").ne(senderId)),
+                    new Update().inc("unreadCount", 1).set("version", version),
+                    InboxEntry.class);
+        });
+    }
+
+    public void onRead(String conversationId, String userId) {
+        write(version -> mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(InboxEntry.idFor(userId, conversationId))),
+                new Update().set("unreadCount", 0).set("version", version),
+                InboxEntry.class));
+    }
+
+    public void onMembersAdded(String conversationId, Collection<String> userIds) {
+        conversationRepository.findById(conversationId).ifPresent(conversation -> {
+            writeEntries(conversation, userIds);
+            updateMemberCount(conversation);
+        });
+    }
+
+    public void onMembersRemoved(String conversationId, Collection<String> userIds) {
+        write(version -> mongoTemplate.updateMulti(
+                Query.query(Criteria.where("conversationId").is(conversationId).and("userId").in(userIds)),
+                new Update().set("removed", true).set("version", version),
+                InboxEntry.class));
+        conversationRepository.findById(conversationId).ifPresent(this::updateMemberCount);
+    }
+
+    public void onProfileUpdated(User user) {
+        write(version -> mongoTemplate.updateMulti(
+                Query.query(Criteria.where("counterpartId").is(user.getId())),
+                new Update()
+                        .set("title", displayName(user))
+                        .set("avatar", user.getAvatar())
+                        .set("version", version),
+                InboxEntry.class));
+    }
+
+    // Retention removed the conversation's last message. Rows that a newer message reached
+    // after observedAt are left alone; the rest get the surviving message, or none.
+    public void onLastMessageRepaired(String conversationId, Conversation.LastMessage lastMessage, Instant observedAt) {
+        Criteria unchanged = Criteria.where("conversationId").is(conversationId).orOperator(
+                Criteria.where("lastMessage").is(null),
+                Criteria.where("lastMessage.timestamp").lt(observedAt));
+        write(version -> {
+            Update update = lastMessage != null
+                    ? new Update().set("lastMessage", lastMessage)
+                    : new Update().unset("lastMessage");
+            mongoTemplate.updateMulti(Query.query(unchanged), update.set("version", version), InboxEntry.class);
+        });
+    }
+
+    // ==================== Consistency check ====================
+
+    // Rebuilds the user's inbox from conversations/users and diffs it against the stored
+    // view. With repair, the rebuilt rows replace the stored ones.
+    public List<String> check(String userId, boolean repair) {
+        List<Conversation> conversations = conversationRepository.findByParticipantsContainingOrderByUpdatedAtDesc(userId);
+        Map<String, User> profiles = counterpartProfiles(conversations);
+
+        Map<String, InboxEntry> stored = new HashMap<>();
+        inboxEntryRepository.findByUserIdAndRemovedFalseOrderByUpdatedAtDesc(userId)
+                .forEach(e -> stored.put(e.getConversationId(), e));
+
+        List<String> differences = new ArrayList<>();
+        List<InboxEntry> rebuilt = new ArrayList<>();
+        for (Conversation conversation : conversations) {
+            InboxEntry expected = buildEntry(conversation, userId, profiles, 0);
+            InboxEntry actual = stored.remove(conversation.getId());
+            if (actual == null) {
+                differences.add(conversation.getId() + ": missing from inbox");
+            } else {
+                diff(conversation.getId(), expected, actual, differences);
+            }
+            rebuilt.add(expected);
+        }
+        stored.keySet().forEach(id -> differences.add(id + ": in inbox but user is not a participant"));
+
+        if (repair && !differences.isEmpty()) {
+            write(version -> {
+                rebuilt.forEach(e -> e.setVersion(version));
+                replaceAll(rebuilt);
+                if (!stored.isEmpty()) {
+                    onMembersRemovedForUser(userId, stored.keySet(), version);
+                }
+            });
+            markBuilt(userId);
+            log.info("Repaired inbox for user {} ({} differences)", userId, differences.size());
+        }
+        return differences;
+    }
+
+    // ==================== Helpers ====================
+
+    // The highest version a changes read may return. A version is handed out before its write
+    // commits, so a reader that already saw v+1 would step past v if v committed later; reads
+    // stop just below the oldest version still being written. This covers writes made on this
+    // node, and versions yet to be handed out are always above it.
+    public long safeVersion() {
+        synchronized (inFlight) {
+            return inFlight.isEmpty()
+                    ? Math.max(lastVersion.get(), System.currentTimeMillis() * 1000 - 1)
+                    : inFlight.first() - 1;
+        }
+    }
+
+    private void write(LongConsumer write) {
+        long version;
+        synchronized (inFlight) {
+            version = nextVersion();
+            inFlight.add(version);
+        }
+        try {
+            write.accept(version);
+        } finally {
+            inFlight.remove(version);
+        }
+    }
+
+    // Versions only ever grow; seeding from the clock keeps them increasing across restarts
+    private long nextVersion() {
+        return lastVersion.updateAndGet(prev -> Math.max(prev + 1, System.currentTimeMillis() * 1000));
+    }
+
+    private void rebuild(String userId) {
+        List<Conversation> conversations = conversationRepository.findByParticipantsContainingOrderByUpdatedAtDesc(userId);
+        if (conversations.isEmpty()) {
+            return;
+        }
+        Map<String, User> profiles = counterpartProfiles(conversations);
+        write(version -> replaceAll(conversations.stream()
+                .map(conversation -> buildEntry(conversation, userId, profiles, version))
+                .toList()));
+        log.info("Built inbox for user {} from {} conversations", userId, conversations.size());
+    }
+
+    private void markBuilt(String userId) {
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(userId)),
+                new Update().set("builtAt", Instant.now()), STATE_COLLECTION);
+    }
+
+    private void writeEntries(Conversation conversation, Collection<String> userIds) {
+        Map<String, User> profiles = conversation.getType() == Conversation.ConversationType.PRIVATE
+                ? profilesFor(conversation.getParticipants())
+                : Map.of();
+        write(version -> {
+            List<InboxEntry> entries = new ArrayList<>();
+            for (String userId : userIds) {
+                entries.add(buildEntry(conversation, userId, profiles, version));
+            }
+            replaceAll(entries);
+        });
+    }
+
+    private void replaceAll(List<InboxEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, InboxEntry.class);
+        for (InboxEntry entry : entries) {
+            bulk.replaceOne(Query.query(Criteria.where("_id").is(entry.getId())), entry,
+                    FindAndReplaceOptions.options().upsert());
+        }
+        bulk.execute();
+    }
+
+    private void onMembersRemovedForUser(String userId, Collection<String> conversationIds, long version) {
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("userId").is(userId).and("conversationId").in(conversationIds)),
+                new Update().set("removed", true).set("version", version),
+                InboxEntry.class);
+    }
+
+    private void updateMemberCount(Conversation conversation) {
+        write(version -> mongoTemplate.updateMulti(
+                Query.query(Criteria.where("conversationId").is(conversation.getId()).and("removed").is(false)),
+                new Update()
+                        .set("memberCount", conversation.getParticipants().size())
+                        .set("version", version),
+                InboxEntry.class));
+    }
+
+    private InboxEntry buildEntry(Conversation conversation, String userId, Map<String, User> profiles, long version) {
+        Map<String, Integer> unread = conversation.getUnreadCount();
+        InboxEntry.InboxEntryBuilder entry = InboxEntry.builder()
+                .id(InboxEntry.idFor(userId, conversation.getId()))
+                .userId(userId)
+                .conversationId(conversation.getId())
+                .type(conversation.getType())
+                .memberCount(conversation.getParticipants().size())
+                .lastMessage(conversation.getLastMessage())
+                .unreadCount(unread != null ? unread.getOrDefault(userId, 0) : 0)
+                .removed(false)
+                .version(version)
+                .updatedAt(conversation.getUpdatedAt());
+
+        if (conversation.getType() == Conversation.ConversationType.PRIVATE) {
+            String otherId = conversation.getParticipants().stream()
+                    .filter(id -> !id.equals(userId))
+                    .findFirst()
+                    .orElse(userId);
+            User other = profiles.get(otherId);
+            entry.counterpartId(otherId)
+                    .participants(conversation.getParticipants())
+                    .title(other != null ? displayName(other) : null)
+                    .avatar(other != null ? other.getAvatar() : null);
+        } else {
+            entry.title(conversation.getGroupName())
+                    .avatar(conversation.getGroupAvatar());
+        }
+        return entry.build();
+    }
+
+    private Map<String, User> counterpartProfiles(List<Conversation> conversations) {
+        return profilesFor(conversations.stream()
+                .filter(c -> c.getType() == Conversation.ConversationType.PRIVATE)
+                .flatMap(c -> c.getParticipants().stream())
+                .toList());
+    }
+
+    private Map<String, User> profilesFor(Collection<String> userIds) {
+        Map<String, User> profiles = new HashMap<>();
+        if (!userIds.isEmpty()) {
+            userRepository.findProfilesByIdIn(new HashSet<>(userIds)).forEach(u -> profiles.put(u.getId(), u));
+        }
+        return profiles;
+    }
+
+    private static String displayName(User user) {
+        return user.getDisplayName() != null ? user.getDisplayName() : user.getUsername();
+    }
+
+    private static void diff(String conversationId, InboxEntry expected, InboxEntry actual, List<String> out) {
+        compare(conversationId, "title", expected.getTitle(), actual.getTitle(), out);
+        compare(conversationId, "avatar", expected.getAvatar(), actual.getAvatar(), out);
+        compare(conversationId, "type", expected.getType(), actual.getType(), out);
+        compare(conversationId, "memberCount", expected.getMemberCount(), actual.getMemberCount(), out);
+        compare(conversationId, "unreadCount", expected.getUnreadCount(), actual.getUnreadCount(), out);
+        compare(conversationId, "lastMessage", expected.getLastMessage(), actual.getLastMessage(), out);
+    }
+
+    private static void compare(String conversationId, String field, Object expected, Object actual, List<String> out) {
+        if (!Objects.equals(expected, actual)) {
+            out.add(conversationId + ": " + field + " expected " + expected + " but was " + actual);
+        }
+    }
+}
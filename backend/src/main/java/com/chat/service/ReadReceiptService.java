@@ -0,0 +1,141 @@
+package com.chat.service;
+
+import com.chat.dto.ReadReceiptBatch;
+import com.chat.model.ReadWatermark;
+import com.chat.repository.ReadWatermarkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReadReceiptService {
+
+    private final ReadWatermarkRepository readWatermarkRepository;
+    private final MongoTemplate mongoTemplate;
+    // Absent in the reactive profile, which has no STOMP broker to broadcast receipts on
+    private final Optional<SimpMessagingTemplate> messagingTemplate;
+
+    // Watermarks not yet flushed, keyed by ReadWatermark.idFor; repeated reads collapse to the latest
+    private final Map<String, ReadWatermark> pending = new ConcurrentHashMap<>();
+
+    public void markRead(String conversationId, String userId, Instant readAt) {
+        ReadWatermark watermark = ReadWatermark.builder()
+                .id(ReadWatermark.idFor(conversationId, userId))
+                .conversationId(conversationId)
+                .userId(userId)
+                .lastReadAt(readAt)
+                .build();
+        pending.merge(watermark.getId(), watermark, ReadReceiptService::later);
+    }
+
+    public List<ReadWatermark> getWatermarks(String conversationId) {
+        return withPending(conversationId, readWatermarkRepository.findByConversationId(conversationId));
+    }
+
+    // Overlays watermarks not yet flushed on ones read from the store (blocking or reactive)
+    public List<ReadWatermark> withPending(String conversationId, List<ReadWatermark> stored) {
+        Map<String, ReadWatermark> byUser = new HashMap<>();
+        for (ReadWatermark watermark : stored) {
+            byUser.put(watermark.getUserId(), watermark);
+        }
+        for (ReadWatermark watermark : pending.values()) {
+            if (watermark.getConversationId().equals(conversationId)) {
+                byUser.merge(watermark.getUserId(), watermark, ReadReceiptService::later);
+            }
+        }
+        return new ArrayList<>(byUser.values());
+    }
+
+    public List<String> getSeenBy(String conversationId, Instant messageTimestamp) {
+        return seenByWithPending(conversationId, messageTimestamp, readWatermarkRepository
+                .findByConversationIdAndLastReadAtGreaterThanEqual(conversationId, messageTimestamp));
+    }
+
+    public List<String> seenByWithPending(String conversationId, Instant messageTimestamp, List<ReadWatermark> stored) {
+        Set<String> seenBy = new LinkedHashSet<>();
+        stored.forEach(w -> seenBy.add(w.getUserId()));
+        for (ReadWatermark watermark : pending.values()) {
+            if (watermark.getConversationId().equals(conversationId)
+                    && !watermark.getLastReadAt().isBefore(messageTimestamp)) {
+                seenBy.add(watermark.getUserId());
+            }
+        }
+        return new ArrayList<>(seenBy);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.receipts.flush-interval-ms:500}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<ReadWatermark> batch = new ArrayList<>();
+        for (String key : new ArrayList<>(pending.keySet())) {
+            ReadWatermark watermark = pending.remove(key);
+            if (watermark != null) {
+                batch.add(watermark);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // One unordered bulk write per flush; $max keeps a stale flush from moving a watermark backwards
+        Instant now = Instant.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ReadWatermark.class);
+        for (ReadWatermark watermark : batch) {
+            bulk.upsert(Query.query(Criteria.where("_id").is(watermark.getId())),
+                    new Update()
+                            .setOnInsert("conversationId", watermark.getConversationId())
+                            .setOnInsert("userId", watermark.getUserId())
+                            .max("lastReadAt", watermark.getLastReadAt())
+                            .set("updatedAt", now));
+        }
+
+        try {
+            bulk.execute();
+        } catch (RuntimeException e) {
+            log.error("Failed to flush {} read watermarks: {}", batch.size(), e.getMessage());
+            batch.forEach(w -> pending.merge(w.getId(), w, ReadReceiptService::later));
+            return;
+        }
+
+        broadcast(batch);
+    }
+
+    private void broadcast(List<ReadWatermark> batch) {
+        if (messagingTemplate.isEmpty()) {
+            return;
+        }
+        Map<String, List<ReadReceiptBatch.Receipt>> byConversation = new HashMap<>();
+        for (ReadWatermark watermark : batch) {
+            byConversation.computeIfAbsent(watermark.getConversationId(), k -> new ArrayList<>())
+                    .add(new ReadReceiptBatch.Receipt(watermark.getUserId(), watermark.getLastReadAt()));
+        }
+
+        byConversation.forEach((conversationId, receipts) -> messagingTemplate.get().convertAndSend(
+                "/topic/conversation." + conversationId,
+                ReadReceiptBatch.builder()
+                        .conversationId(conversationId)
+                        .receipts(receipts)
+                        .build()
+        ));
+    }
+
+    private static ReadWatermark later(ReadWatermark a, ReadWatermark b) {
+        return b.getLastReadAt().isAfter(a.getLastReadAt()) ? b : a;
+    }
+}
@@ -14,6 +14,7 @@ import java.util.Optional;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final InboxService inboxService;
 
     public User createUser(String username, String email, String password, String displayName) {
         if (userRepository.existsByUsername(username)) {
@@ -72,7 +73,9 @@ public class UserService {
             user.setAvatar(avatar);
         }
         user.setUpdatedAt(Instant.now());
-        
-        return userRepository.save(user);
+
+        User saved = userRepository.save(user);
+        inboxService.onProfileUpdated(saved);
+        return saved;
     }
 }
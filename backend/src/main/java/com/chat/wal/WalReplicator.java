@@ -0,0 +1,134 @@
+package com.chat.wal;
+
+import com.chat.dto.ChatMessage;
+import com.chat.dto.SendCorrection;
+import com.chat.model.Message;
+import com.chat.service.ChatService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@ConditionalOnProperty(name = "chat.wal.enabled", havingValue = "true")
+@Profile("!reactive")
+@Slf4j
+public class WalReplicator implements Runnable {
+
+    private static final long POLL_TIMEOUT_MILLIS = 200;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    private final WriteAheadLog writeAheadLog;
+    private final ChatService chatService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final int batchSize;
+
+    private Thread worker;
+    private volatile boolean running;
+
+    public WalReplicator(WriteAheadLog writeAheadLog,
+                         ChatService chatService,
+                         SimpMessagingTemplate messagingTemplate,
+                         @Value("${chat.wal.replication-batch-size:256}") int batchSize) {
+        this.writeAheadLog = writeAheadLog;
+        this.chatService = chatService;
+        this.messagingTemplate = messagingTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @PostConstruct
+    public void start() {
+        // Entries left from before a restart aren't in Mongo yet, so a resend of one would pass
+        // the durable check; put them back in the recent-send window first
+        int[] seeded = {0};
+        writeAheadLog.forEachUnreplicated(entry -> {
+            chatService.rememberSend(entry.message());
+            seeded[0]++;
+        });
+        if (seeded[0] > 0) {
+            log.info("Seeded send deduplication with {} unreplicated WAL entries", seeded[0]);
+        }
+
+        running = true;
+        worker = new Thread(this, "wal-replicator");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(MAX_BACKOFF_MILLIS);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            List<WriteAheadLog.WalEntry> batch;
+            try {
+                batch = writeAheadLog.drain(batchSize, POLL_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!batch.isEmpty() && !replicate(batch)) {
+                return;
+            }
+        }
+    }
+
+    // Retries the batch until Mongo accepts it; entries already stored are skipped,
+    // so a retry after a partial write never duplicates anything.
+    private boolean replicate(List<WriteAheadLog.WalEntry> batch) {
+        long backoff = 100;
+        int next = 0;
+        while (true) {
+            try {
+                for (; next < batch.size(); next++) {
+                    Message message = batch.get(next).message();
+                    chatService.persistMessageIfAbsent(message)
+                            .ifPresent(original -> correct(message, original));
+                }
+                writeAheadLog.markReplicated(batch.get(batch.size() - 1).seq());
+                return true;
+            } catch (RuntimeException e) {
+                log.warn("WAL replication failed at seq {}, retrying in {}ms: {}",
+                        batch.get(Math.min(next, batch.size() - 1)).seq(), backoff, e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    // The duplicate was already broadcast under its own id; point clients at the original
+    private void correct(Message duplicate, Message original) {
+        messagingTemplate.convertAndSend("/topic/conversation." + original.getConversationId(),
+                SendCorrection.builder()
+                        .conversationId(original.getConversationId())
+                        .duplicateId(duplicate.getId())
+                        .original(ChatMessage.builder()
+                                .id(original.getId())
+                                .conversationId(original.getConversationId())
+                                .senderId(original.getSenderId())
+                                .senderName(original.getSenderName())
+                                .content(original.getContent())
+                                .clientMessageId(original.getClientMessageId())
+                                .type(ChatMessage.MessageType.CHAT)
+                                .attachments(original.getAttachments())
+                                .timestamp(original.getTimestamp())
+                                .build())
+                        .build());
+    }
+}
@@ -0,0 +1,450 @@
+package com.chat.wal;
+
+import com.chat.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+@Component
+@ConditionalOnProperty(name = "chat.wal.enabled", havingValue = "true")
+@Profile("!reactive")
+@Slf4j
+public class WriteAheadLog {
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    // Record layout: [int payloadLength][long seq][long crc32(payload)][payload]
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Long.BYTES;
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final int maxBuffered;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Condition appended = writeLock.newCondition();
+    private final Object forceLock = new Object();
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+    // Unreplicated entries kept in memory, up to maxBuffered. Once it overflows, new entries
+    // stay on disk only and drain() reads them back from the segments until it catches up.
+    private final ArrayDeque<WalEntry> buffered = new ArrayDeque<>();
+    private boolean spilled;
+    private long readSeq = 1;
+    private SegmentCursor cursor;
+
+    private FileChannel current;
+    private long nextSeq = 1;
+    private volatile long durableSeq;
+    private volatile long checkpointSeq;
+
+    public WriteAheadLog(ObjectMapper objectMapper,
+                         @Value("${chat.wal.directory:./data/wal}") String directory,
+                         @Value("${chat.wal.segment-bytes:67108864}") long maxSegmentBytes,
+                         @Value("${chat.wal.max-buffered:10000}") int maxBuffered) {
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory);
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxBuffered = maxBuffered;
+    }
+
+    public record WalEntry(long seq, Message message) {
+    }
+
+    // Where the last read from disk stopped, so the next one doesn't rescan the segment
+    private record SegmentCursor(Path segment, long offset, long nextSeq) {
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        checkpointSeq = readCheckpoint();
+        readSeq = checkpointSeq + 1;
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .forEach(p -> segments.put(parseBaseSeq(p), p));
+        }
+
+        // Replay every segment; anything past the checkpoint has not reached Mongo yet
+        long lastSeq = checkpointSeq;
+        for (Path segment : segments.values()) {
+            lastSeq = Math.max(lastSeq, recoverSegment(segment));
+        }
+
+        nextSeq = lastSeq + 1;
+        durableSeq = lastSeq;
+        current = openSegment(nextSeq);
+        deleteReplicatedSegments();
+
+        log.info("Write-ahead log opened at {} ({} unreplicated entries, next seq {})",
+                directory, unreplicatedCount(), nextSeq);
+    }
+
+    public WalEntry append(Message message) {
+        if (message.getId() == null) {
+            message.setId(new ObjectId().toHexString());
+        }
+
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(message);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize message for WAL", e);
+        }
+
+        WalEntry entry;
+        writeLock.lock();
+        try {
+            if (current.size() >= maxSegmentBytes) {
+                rollSegment();
+            }
+            entry = new WalEntry(nextSeq++, message);
+            writeFully(current, encode(entry.seq(), payload));
+            buffer(entry);
+            appended.signal();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append message to WAL", e);
+        } finally {
+            writeLock.unlock();
+        }
+
+        sync(entry.seq());
+        return entry;
+    }
+
+    // Group commit: whichever caller gets the force lock first fsyncs everything written
+    // so far, and the callers queued behind it return without forcing again.
+    private void sync(long seq) {
+        synchronized (forceLock) {
+            if (durableSeq >= seq) {
+                return;
+            }
+
+            FileChannel channel;
+            long target;
+            writeLock.lock();
+            try {
+                channel = current;
+                target = nextSeq - 1;
+            } finally {
+                writeLock.unlock();
+            }
+
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // The segment was rolled in the meantime, and rolling forces it before closing
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to force WAL segment", e);
+            }
+            durableSeq = target;
+        }
+    }
+
+    // Hands out unreplicated entries in seq order; meant for a single consumer (the replicator)
+    public List<WalEntry> drain(int maxEntries, long timeoutMillis) throws InterruptedException {
+        List<WalEntry> batch = new ArrayList<>();
+        long fromSeq;
+        long toSeq;
+        NavigableMap<Long, Path> candidates;
+
+        writeLock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (readSeq >= nextSeq) {
+                if (nanos <= 0) {
+                    return batch;
+                }
+                nanos = appended.awaitNanos(nanos);
+            }
+            if (!buffered.isEmpty()) {
+                while (batch.size() < maxEntries && !buffered.isEmpty()) {
+                    batch.add(buffered.poll());
+                }
+                readSeq = batch.get(batch.size() - 1).seq() + 1;
+                return batch;
+            }
+            fromSeq = readSeq;
+            toSeq = Math.min(nextSeq - 1, readSeq + maxEntries - 1);
+            candidates = segmentsFrom(fromSeq);
+        } finally {
+            writeLock.unlock();
+        }
+
+        // Spilled: these entries are only on disk. Read outside the lock so appends carry on.
+        try {
+            scan(candidates, fromSeq, toSeq, batch::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read WAL segments", e);
+        }
+
+        writeLock.lock();
+        try {
+            readSeq = toSeq + 1;
+            if (readSeq >= nextSeq) {
+                // Caught up with the writer; new entries can be buffered again
+                spilled = false;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return batch;
+    }
+
+    // Streams every unreplicated entry from disk without buffering them
+    public void forEachUnreplicated(Consumer<WalEntry> consumer) {
+        long fromSeq;
+        long toSeq;
+        NavigableMap<Long, Path> candidates;
+        writeLock.lock();
+        try {
+            fromSeq = checkpointSeq + 1;
+            toSeq = nextSeq - 1;
+            candidates = segmentsFrom(fromSeq);
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            scan(candidates, fromSeq, toSeq, consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read WAL segments", e);
+        }
+    }
+
+    public void markReplicated(long seq) {
+        if (seq <= checkpointSeq) {
+            return;
+        }
+        try {
+            Path tmp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, ByteBuffer.allocate(Long.BYTES).putLong(0, seq));
+                channel.force(true);
+            }
+            Files.move(tmp, directory.resolve(CHECKPOINT_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            checkpointSeq = seq;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write WAL checkpoint", e);
+        }
+
+        writeLock.lock();
+        try {
+            deleteReplicatedSegments();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public long unreplicatedCount() {
+        return Math.max(0, nextSeq - 1 - checkpointSeq);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (current != null && current.isOpen()) {
+                current.force(false);
+                current.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        current.force(false);
+        current.close();
+        current = openSegment(nextSeq);
+    }
+
+    private FileChannel openSegment(long baseSeq) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, baseSeq, SEGMENT_SUFFIX));
+        segments.put(baseSeq, path);
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    // A segment can go once the next segment starts at or below the first unreplicated seq
+    private void deleteReplicatedSegments() {
+        Iterator<Map.Entry<Long, Path>> it = segments.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Path> segment = it.next();
+            Long nextBase = segments.higherKey(segment.getKey());
+            if (nextBase == null || nextBase > checkpointSeq + 1) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(segment.getValue());
+                it.remove();
+            } catch (IOException e) {
+                log.warn("Failed to delete replicated WAL segment {}: {}", segment.getValue(), e.getMessage());
+                break;
+            }
+        }
+    }
+
+    // Called with the write lock held (or during open)
+    private void buffer(WalEntry entry) {
+        if (!spilled && buffered.size() < maxBuffered) {
+            buffered.add(entry);
+        } else {
+            spilled = true;
+        }
+    }
+
+    private NavigableMap<Long, Path> segmentsFrom(long seq) {
+        Long base = segments.floorKey(seq);
+        return new TreeMap<>(base != null ? segments.tailMap(base, true) : segments);
+    }
+
+    private void scan(NavigableMap<Long, Path> candidates, long fromSeq, long toSeq,
+                      Consumer<WalEntry> consumer) throws IOException {
+        if (fromSeq > toSeq) {
+            return;
+        }
+        SegmentCursor hint = cursor;
+        for (Path segment : candidates.values()) {
+            long offset = hint != null && hint.segment().equals(segment) && hint.nextSeq() == fromSeq
+                    ? hint.offset()
+                    : 0;
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                long size = channel.size();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                while (offset + HEADER_BYTES <= size) {
+                    header.clear();
+                    readFully(channel, header, offset);
+                    int length = header.getInt(0);
+                    long seq = header.getLong(Integer.BYTES);
+                    long crc = header.getLong(Integer.BYTES + Long.BYTES);
+                    if (seq > toSeq || length <= 0 || offset + HEADER_BYTES + length > size) {
+                        break;
+                    }
+                    long recordEnd = offset + HEADER_BYTES + length;
+                    if (seq >= fromSeq) {
+                        ByteBuffer payload = ByteBuffer.allocate(length);
+                        readFully(channel, payload, offset + HEADER_BYTES);
+                        if (checksum(payload.array()) != crc) {
+                            throw new IOException("Corrupt WAL record " + seq + " in " + segment);
+                        }
+                        consumer.accept(new WalEntry(seq, objectMapper.readValue(payload.array(), Message.class)));
+                        cursor = new SegmentCursor(segment, recordEnd, seq + 1);
+                        if (seq == toSeq) {
+                            return;
+                        }
+                    }
+                    offset = recordEnd;
+                }
+            }
+        }
+    }
+
+    private long recoverSegment(Path segment) throws IOException {
+        long lastSeq = 0;
+        long validBytes = 0;
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+            while (validBytes + HEADER_BYTES <= size) {
+                header.clear();
+                readFully(channel, header, validBytes);
+                int length = header.getInt(0);
+                long seq = header.getLong(Integer.BYTES);
+                long crc = header.getLong(Integer.BYTES + Long.BYTES);
+
+                if (length <= 0 || validBytes + HEADER_BYTES + length > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(channel, payload, validBytes + HEADER_BYTES);
+                if (checksum(payload.array()) != crc) {
+                    break;
+                }
+
+                if (seq > checkpointSeq) {
+                    buffer(new WalEntry(seq, objectMapper.readValue(payload.array(), Message.class)));
+                }
+                lastSeq = seq;
+                validBytes += HEADER_BYTES + length;
+            }
+
+            // Drop a record torn by a crash mid-write so later appends start on a clean boundary
+            if (validBytes < size) {
+                log.warn("Truncating torn WAL tail in {} at offset {}", segment, validBytes);
+                channel.truncate(validBytes);
+                channel.force(true);
+            }
+        }
+        return lastSeq;
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(path)).getLong();
+    }
+
+    private static ByteBuffer encode(long seq, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putLong(seq);
+        buffer.putLong(checksum(payload));
+        buffer.put(payload);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    private static long parseBaseSeq(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of WAL segment");
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.chat.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CandidateHeapTest {
+
+    @Test
+    void keepsTheStrongestKeysAndEvictsTheWeakest() {
+        CandidateHeap heap = new CandidateHeap(3);
+        heap.offer("a", 5);
+        heap.offer("b", 1);
+        heap.offer("c", 3);
+
+        heap.offer("d", 2);
+        assertThat(heap.keys()).containsExactlyInAnyOrder("a", "c", "d");
+
+        // Not stronger than the weakest candidate, so it stays out
+        heap.offer("e", 2);
+        assertThat(heap.keys()).containsExactlyInAnyOrder("a", "c", "d");
+    }
+
+    @Test
+    void aTrackedKeyThatGrowsIsNoLongerTheOneEvicted() {
+        CandidateHeap heap = new CandidateHeap(3);
+        heap.offer("a", 1);
+        heap.offer("b", 2);
+        heap.offer("c", 3);
+
+        heap.offer("a", 10);
+        heap.offer("d", 4);
+
+        assertThat(heap.keys()).containsExactlyInAnyOrder("a", "c", "d");
+    }
+
+    @Test
+    void heapOrderHoldsUnderManyUpdates() {
+        CandidateHeap heap = new CandidateHeap(10);
+        for (int round = 1; round <= 100; round++) {
+            for (int key = 0; key < 30; key++) {
+                // Keys 20..29 grow fastest and must end up as the candidates
+                heap.offer("k" + key, (long) round * (key + 1));
+            }
+        }
+
+        assertThat(heap.keys()).containsExactlyInAnyOrder(
+                "k20", "k21", "k22", "k23", "k24", "k25", "k26", "k27", "k28", "k29");
+    }
+}
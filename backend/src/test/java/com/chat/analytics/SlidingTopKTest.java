@@ -0,0 +1,151 @@
+package com.chat.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlidingTopKTest {
+
+    private static final int CONVERSATIONS = 1_000_000;
+    private static final int HOT = 20;
+    private static final int WIDTH = 2048;
+    private static final int DEPTH = 4;
+    private static final long NOW = 1_700_000_000_000L;
+
+    // One message for each of 1M conversations, with 20 hot ones mixed in at 6,000 to 15,500
+    // messages each; the default sketch size has to pick out exactly those 20
+    @Test
+    void findsTheHotConversationsAmongAMillion() {
+        SlidingTopK topK = new SlidingTopK(6, 10_000, WIDTH, DEPTH, HOT * 4);
+        List<String> events = events();
+        for (String key : events) {
+            topK.add(key, NOW);
+        }
+
+        assertAccurate(topK, events.size());
+    }
+
+    @Test
+    void concurrentAddsLoseNothing() throws Exception {
+        SlidingTopK topK = new SlidingTopK(6, 10_000, WIDTH, DEPTH, HOT * 4);
+        List<String> events = events();
+        int threads = 8;
+        run(threads, thread -> {
+            for (int i = thread; i < events.size(); i += threads) {
+                topK.add(events.get(i), NOW);
+            }
+        });
+
+        assertThat(topK.total(NOW)).isEqualTo(events.size());
+        assertAccurate(topK, events.size());
+    }
+
+    @Test
+    void expiredBucketsLeaveTheWindowAndTheirSlotStartsEmpty() {
+        SlidingTopK topK = new SlidingTopK(3, 1000, 256, 4, 8);
+        topK.add("conv-1", NOW);
+        topK.add("conv-1", NOW + 1000);
+
+        assertThat(topK.estimate("conv-1", NOW + 1000)).isEqualTo(2);
+        assertThat(topK.estimate("conv-1", NOW + 3000)).isEqualTo(1);
+
+        // Same slot as NOW, three periods later: the old count is gone, not added to
+        topK.add("conv-1", NOW + 3000);
+        assertThat(topK.estimate("conv-1", NOW + 3000)).isEqualTo(2);
+        assertThat(topK.total(NOW + 6000)).isZero();
+        assertThat(topK.top(5, NOW + 6000)).isEmpty();
+    }
+
+    // Rough cost per add at 1M distinct conversations, serial and from 8 threads at once.
+    // Prints the numbers as a baseline; the work is fixed so only the timing varies.
+    @Test
+    void addOverheadAtAMillionConversations() throws Exception {
+        List<String> events = events();
+        for (int threads : new int[]{1, 8}) {
+            SlidingTopK topK = new SlidingTopK(6, 10_000, WIDTH, DEPTH, HOT * 4);
+            long started = System.nanoTime();
+            run(threads, thread -> {
+                for (int i = thread; i < events.size(); i += threads) {
+                    topK.add(events.get(i), NOW);
+                }
+            });
+            long elapsed = System.nanoTime() - started;
+            System.out.printf("SlidingTopK.add, %d thread(s): %d adds in %d ms, %.0f ns/add%n",
+                    threads, events.size(), TimeUnit.NANOSECONDS.toMillis(elapsed), (double) elapsed / events.size());
+            assertThat(topK.total(NOW)).isEqualTo(events.size());
+        }
+    }
+
+    private static void assertAccurate(SlidingTopK topK, long total) {
+        List<Map.Entry<String, Long>> top = topK.top(HOT, NOW);
+        assertThat(top).extracting(Map.Entry::getKey).containsExactlyInAnyOrderElementsOf(hotKeys());
+        assertThat(top.get(0).getKey()).isEqualTo("hot-" + (HOT - 1));
+
+        // Never under, and over by no more than a few times total/width
+        long slack = 3 * total / WIDTH;
+        for (int k = 0; k < HOT; k++) {
+            long actual = hotCount(k);
+            assertThat(topK.estimate("hot-" + k, NOW)).isBetween(actual, actual + slack);
+        }
+        assertThat(topK.estimate("conv-123456", NOW)).isBetween(1L, 1 + slack);
+    }
+
+    private static List<String> events() {
+        List<String> hot = new ArrayList<>();
+        for (int k = 0; k < HOT; k++) {
+            for (int i = 0; i < hotCount(k); i++) {
+                hot.add("hot-" + k);
+            }
+        }
+        Collections.shuffle(hot, new Random(42));
+
+        // Spread the hot messages evenly through the cold ones
+        List<String> events = new ArrayList<>(CONVERSATIONS + hot.size());
+        int added = 0;
+        for (int c = 0; c < CONVERSATIONS; c++) {
+            events.add("conv-" + c);
+            while ((long) added * CONVERSATIONS < (long) (c + 1) * hot.size()) {
+                events.add(hot.get(added++));
+            }
+        }
+        return events;
+    }
+
+    private static long hotCount(int k) {
+        return 6000 + 500L * k;
+    }
+
+    private static List<String> hotKeys() {
+        List<String> keys = new ArrayList<>();
+        for (int k = 0; k < HOT; k++) {
+            keys.add("hot-" + k);
+        }
+        return keys;
+    }
+
+    private interface Worker {
+        void run(int thread);
+    }
+
+    private static void run(int threads, Worker worker) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                worker.run(thread);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+    }
+}
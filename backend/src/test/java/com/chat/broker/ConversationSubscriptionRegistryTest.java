@@ -0,0 +1,234 @@
+package com.chat.broker;
+
+import com.chat.config.WebSocketConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ConversationSubscriptionRegistryTest {
+
+    private static final String TOPIC = "/topic/conversation.c1";
+
+    private SubscriptionRegistry fallback;
+    private ConversationSubscriptionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        fallback = spy(new DefaultSubscriptionRegistry());
+        registry = new ConversationSubscriptionRegistry("/topic/conversation.", fallback);
+    }
+
+    @Test
+    void exactSubscriptionsAreServedWithoutTheFallback() {
+        registry.registerSubscription(subscribe("s1", "sub-1", TOPIC, null));
+        registry.registerSubscription(subscribe("s2", "sub-1", TOPIC, null));
+
+        assertThat(registry.findSubscriptions(send(TOPIC)))
+                .containsEntry("s1", List.of("sub-1"))
+                .containsEntry("s2", List.of("sub-1"));
+        verify(fallback, never()).registerSubscription(any());
+        verify(fallback, never()).findSubscriptions(any());
+    }
+
+    @Test
+    void unsubscribingASelectorSubscriptionRemovesItFromTheFallback() {
+        // Same destination in both registries: the exact one, and one the selector sends to the fallback
+        registry.registerSubscription(subscribe("s1", "sub-1", TOPIC, null));
+        registry.registerSubscription(subscribe("s1", "sub-2", TOPIC, "headers.priority == 'high'"));
+        verify(fallback).registerSubscription(any());
+
+        registry.unregisterSubscription(unsubscribe("s1", "sub-2"));
+
+        verify(fallback).unregisterSubscription(any());
+        assertThat(fallback.findSubscriptions(send(TOPIC))).isEmpty();
+        // The exact subscriber is untouched, and with nothing overlapping the fallback is not consulted
+        clearInvocations(fallback);
+        assertThat(registry.findSubscriptions(send(TOPIC))).containsOnlyKeys("s1").containsEntry("s1", List.of("sub-1"));
+        verify(fallback, never()).findSubscriptions(any());
+    }
+
+    @Test
+    void unsubscribingTheExactOneLeavesTheSelectorSubscription() {
+        registry.registerSubscription(subscribe("s1", "sub-1", TOPIC, null));
+        registry.registerSubscription(subscribe("s1", "sub-2", TOPIC, "headers.priority == 'high'"));
+
+        registry.unregisterSubscription(unsubscribe("s1", "sub-1"));
+
+        verify(fallback, never()).unregisterSubscription(any());
+        assertThat(registry.findSubscriptions(send(TOPIC)).getOrDefault("s1", List.of())).doesNotContain("sub-1");
+    }
+
+    @Test
+    void disconnectReleasesBothRegistries() {
+        registry.registerSubscription(subscribe("s1", "sub-1", TOPIC, null));
+        registry.registerSubscription(subscribe("s1", "sub-2", TOPIC, "headers.priority == 'high'"));
+        registry.registerSubscription(subscribe("s1", "sub-3", "/topic/conversation.*", null));
+        registry.registerSubscription(subscribe("s2", "sub-1", TOPIC, null));
+
+        registry.unregisterAllSubscriptions("s1");
+
+        verify(fallback).unregisterAllSubscriptions("s1");
+        clearInvocations(fallback);
+        assertThat(registry.findSubscriptions(send(TOPIC))).containsOnlyKeys("s2");
+        // Both overlapping subscriptions were released, so lookups are back to the exact map only
+        verify(fallback, never()).findSubscriptions(any());
+    }
+
+    @Test
+    void resubscribingUnderTheSameIdMovesBetweenRegistries() {
+        registry.registerSubscription(subscribe("s1", "sub-1", TOPIC, "headers.priority == 'high'"));
+        registry.registerSubscription(subscribe("s1", "sub-1", TOPIC, null));
+
+        verify(fallback).unregisterSubscription(any());
+        assertThat(fallback.findSubscriptions(send(TOPIC))).isEmpty();
+        assertThat(registry.findSubscriptions(send(TOPIC))).containsEntry("s1", List.of("sub-1"));
+    }
+
+    @Test
+    void brokerSettingsCarryOverToBothRegistries() {
+        SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(),
+                new ExecutorSubscribableChannel(), new ExecutorSubscribableChannel(), List.of("/topic"));
+        broker.setSelectorHeaderName("filter");
+        broker.setCacheLimit(42);
+
+        WebSocketConfig.conversationSubscriptionRegistryPostProcessor().postProcessAfterInitialization(broker, "broker");
+
+        assertThat(broker.getSubscriptionRegistry()).isInstanceOf(ConversationSubscriptionRegistry.class);
+        SubscriptionRegistry configured = broker.getSubscriptionRegistry();
+        DefaultSubscriptionRegistry fallback = (DefaultSubscriptionRegistry) ReflectionTestUtils.getField(configured, "fallback");
+        assertThat(fallback.getCacheLimit()).isEqualTo(42);
+        assertThat(fallback.getSelectorHeaderName()).isEqualTo("filter");
+
+        // A selector under the broker's header name goes to the fallback, which evaluates it
+        configured.registerSubscription(subscribe("s1", "sub-1", TOPIC, "filter", "headers.priority == 'high'"));
+        // Under any other name it is just a header, so the subscription stays exact
+        configured.registerSubscription(subscribe("s2", "sub-1", TOPIC, "selector", "headers.priority == 'high'"));
+        assertThat(fallback.findSubscriptions(send(TOPIC))).isEmpty();
+        assertThat(configured.findSubscriptions(send(TOPIC))).containsOnlyKeys("s2");
+    }
+
+    // 100k subscriptions over 20k conversation topics, 5 subscribers each. Lookups are compared
+    // against the default registry alone, which at this size mostly misses its cache and
+    // matches the destination against every subscription.
+    @Test
+    void hundredThousandSubscriptionsStayFastToLookUpAndChurn() {
+        int sessions = 10_000;
+        int perSession = 10;
+        int topics = 20_000;
+        SubscriptionRegistry baseline = new DefaultSubscriptionRegistry();
+        long started = System.nanoTime();
+        for (int session = 0; session < sessions; session++) {
+            for (int sub = 0; sub < perSession; sub++) {
+                String topic = "/topic/conversation.c" + (session * perSession + sub) % topics;
+                registry.registerSubscription(subscribe("s" + session, "sub-" + sub, topic, null));
+            }
+        }
+        long registerMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        for (int session = 0; session < sessions; session++) {
+            for (int sub = 0; sub < perSession; sub++) {
+                String topic = "/topic/conversation.c" + (session * perSession + sub) % topics;
+                baseline.registerSubscription(subscribe("s" + session, "sub-" + sub, topic, null));
+            }
+        }
+
+        Random random = new Random(42);
+        List<Message<byte[]>> sends = new ArrayList<>();
+        for (int i = 0; i < 4096; i++) {
+            sends.add(send("/topic/conversation.c" + random.nextInt(topics)));
+        }
+        for (int i = 0; i < 50_000; i++) {
+            assertThat(registry.findSubscriptions(sends.get(i & 4095))).hasSize(5);
+        }
+        int lookups = 200_000;
+        started = System.nanoTime();
+        long found = 0;
+        for (int i = 0; i < lookups; i++) {
+            found += registry.findSubscriptions(sends.get(i & 4095)).size();
+        }
+        long lookupNanos = (System.nanoTime() - started) / lookups;
+        assertThat(found).isEqualTo(5L * lookups);
+
+        int baselineLookups = 500;
+        started = System.nanoTime();
+        for (int i = 0; i < baselineLookups; i++) {
+            assertThat(baseline.findSubscriptions(sends.get(i))).hasSize(5);
+        }
+        long baselineNanos = (System.nanoTime() - started) / baselineLookups;
+
+        // Churn: every move is an unsubscribe plus a subscribe elsewhere, as chat windows open and close
+        int moves = 100_000;
+        started = System.nanoTime();
+        for (int i = 0; i < moves; i++) {
+            String session = "s" + random.nextInt(sessions);
+            String subscription = "sub-" + random.nextInt(perSession);
+            registry.unregisterSubscription(unsubscribe(session, subscription));
+            registry.registerSubscription(subscribe(session, subscription,
+                    "/topic/conversation.c" + random.nextInt(topics), null));
+        }
+        long churnNanos = (System.nanoTime() - started) / moves;
+
+        long total = 0;
+        for (int topic = 0; topic < topics; topic++) {
+            total += registry.findSubscriptions(send("/topic/conversation.c" + topic)).values().stream()
+                    .mapToInt(List::size).sum();
+        }
+        assertThat(total).isEqualTo((long) sessions * perSession);
+
+        System.out.printf("100k subscriptions: register %d ms, lookup %d ns (default registry %d ns), churn %d ns/move%n",
+                registerMillis, lookupNanos, baselineNanos, churnNanos);
+        assertThat(lookupNanos * 100).isLessThan(baselineNanos);
+
+        for (int session = 0; session < sessions; session++) {
+            registry.unregisterAllSubscriptions("s" + session);
+        }
+        for (int topic = 0; topic < topics; topic++) {
+            assertThat(registry.findSubscriptions(send("/topic/conversation.c" + topic))).isEmpty();
+        }
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, String destination, String selector) {
+        return subscribe(sessionId, subscriptionId, destination, "selector", selector);
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, String destination,
+                                             String selectorHeader, String selector) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        if (selector != null) {
+            accessor.setNativeHeader(selectorHeader, selector);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> unsubscribe(String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> send(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
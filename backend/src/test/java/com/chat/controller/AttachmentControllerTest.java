@@ -0,0 +1,317 @@
+package com.chat.controller;
+
+import com.chat.model.AttachmentBlob;
+import com.chat.repository.AttachmentBlobRepository;
+import com.chat.service.AttachmentService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AttachmentControllerTest {
+
+    private static final byte[] DIGITS = "0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0};
+
+    @TempDir
+    Path directory;
+
+    private AttachmentBlobRepository repository;
+    private AttachmentService attachmentService;
+    private AttachmentController controller;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, AttachmentBlob> stored = new ConcurrentHashMap<>();
+        repository = mock(AttachmentBlobRepository.class);
+        when(repository.findById(anyString())).thenAnswer(i -> Optional.ofNullable(stored.get(i.<String>getArgument(0))));
+        when(repository.save(any(AttachmentBlob.class))).thenAnswer(i -> {
+            AttachmentBlob blob = i.getArgument(0);
+            stored.put(blob.getId(), blob);
+            return blob;
+        });
+        attachmentService = new AttachmentService(repository, directory.toString(), 1024 * 1024);
+        controller = new AttachmentController(attachmentService);
+    }
+
+    @Test
+    void htmlIsDownloadedNotRendered() throws IOException {
+        AttachmentBlob blob = attachmentService.store(new ByteArrayInputStream(
+                "<script>alert(1)</script>".getBytes(StandardCharsets.UTF_8)), "text/html", "u1");
+
+        MockHttpServletResponse response = download(blob, "notes.html");
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentType()).isEqualTo("text/html");
+        assertThat(response.getHeader("X-Content-Type-Options")).isEqualTo("nosniff");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION))
+                .startsWith("attachment")
+                .contains("notes.html");
+    }
+
+    @Test
+    void allowListedImagesStayInline() throws IOException {
+        AttachmentBlob blob = attachmentService.store(new ByteArrayInputStream(PNG), "image/png", "u1");
+
+        MockHttpServletResponse response = download(blob, null);
+
+        assertThat(response.getContentType()).isEqualTo("image/png");
+        assertThat(response.getHeader("X-Content-Type-Options")).isEqualTo("nosniff");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION)).isNull();
+        assertThat(response.getContentAsByteArray()).isEqualTo(PNG);
+    }
+
+    @Test
+    void unnamedDownloadsFallBackToTheHash() throws IOException {
+        AttachmentBlob blob = attachmentService.store(new ByteArrayInputStream(new byte[]{1, 2, 3}), null, "u1");
+
+        MockHttpServletResponse response = download(blob, "");
+
+        assertThat(response.getContentType()).isEqualTo("application/octet-stream");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION)).contains(blob.getId());
+    }
+
+    private MockHttpServletResponse download(AttachmentBlob blob, String name) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.download(blob.getId(), name, new MockHttpServletRequest("GET", "/api/attachments/" + blob.getId()),
+                response);
+        return response;
+    }
+
+    @Test
+    void singleRangeIsServedAsPartialContent() throws IOException {
+        AttachmentBlob blob = storeDigits();
+
+        MockHttpServletResponse response = downloadWith(blob, Map.of(HttpHeaders.RANGE, "bytes=2-5"));
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-5/10");
+        assertThat(response.getContentLengthLong()).isEqualTo(4);
+        assertThat(response.getContentAsString()).isEqualTo("2345");
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+    }
+
+    @Test
+    void suffixRangeServesTheTail() throws IOException {
+        AttachmentBlob blob = storeDigits();
+
+        MockHttpServletResponse response = downloadWith(blob, Map.of(HttpHeaders.RANGE, "bytes=-3"));
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 7-9/10");
+        assertThat(response.getContentAsString()).isEqualTo("789");
+    }
+
+    @Test
+    void unsatisfiableRangeIs416() throws IOException {
+        AttachmentBlob blob = storeDigits();
+
+        MockHttpServletResponse response = downloadWith(blob, Map.of(HttpHeaders.RANGE, "bytes=20-30"));
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+    }
+
+    @Test
+    void multipleRangesFallBackToTheFullBody() throws IOException {
+        AttachmentBlob blob = storeDigits();
+
+        MockHttpServletResponse response = downloadWith(blob, Map.of(HttpHeaders.RANGE, "bytes=0-1,4-5"));
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isNull();
+        assertThat(response.getContentAsString()).isEqualTo("0123456789");
+    }
+
+    @Test
+    void ifRangeWithTheCurrentEtagKeepsTheRange() throws IOException {
+        AttachmentBlob blob = storeDigits();
+
+        MockHttpServletResponse response = downloadWith(blob, Map.of(
+                HttpHeaders.RANGE, "bytes=0-1",
+                HttpHeaders.IF_RANGE, "\"" + blob.getId() + "\""));
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentAsString()).isEqualTo("01");
+    }
+
+    @Test
+    void ifRangeWithAnotherValidatorServesTheFullBody() throws IOException {
+        AttachmentBlob blob = storeDigits();
+
+        for (String validator : List.of("\"not-this-one\"", "Wed, 21 Oct 2015 07:28:00 GMT")) {
+            MockHttpServletResponse response = downloadWith(blob, Map.of(
+                    HttpHeaders.RANGE, "bytes=0-1",
+                    HttpHeaders.IF_RANGE, validator));
+
+            assertThat(response.getStatus()).isEqualTo(200);
+            assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isNull();
+            assertThat(response.getContentAsString()).isEqualTo("0123456789");
+        }
+    }
+
+    @Test
+    void matchingIfNoneMatchIs304WithoutABody() throws IOException {
+        AttachmentBlob blob = storeDigits();
+        String etag = downloadWith(blob, Map.of()).getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isEqualTo("\"" + blob.getId() + "\"");
+
+        for (String ifNoneMatch : List.of(etag, "W/" + etag, "\"other\", " + etag, "*")) {
+            MockHttpServletResponse response = downloadWith(blob, Map.of(HttpHeaders.IF_NONE_MATCH, ifNoneMatch));
+
+            assertThat(response.getStatus()).isEqualTo(304);
+            assertThat(response.getContentAsByteArray()).isEmpty();
+            assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(etag);
+        }
+
+        MockHttpServletResponse stale = downloadWith(blob, Map.of(HttpHeaders.IF_NONE_MATCH, "\"other\""));
+        assertThat(stale.getStatus()).isEqualTo(200);
+        assertThat(stale.getContentAsString()).isEqualTo("0123456789");
+    }
+
+    @Test
+    void sendfileConnectorsGetTheFileRegionInsteadOfABody() throws IOException {
+        AttachmentBlob blob = storeDigits();
+        MockHttpServletRequest request = request(blob, Map.of(HttpHeaders.RANGE, "bytes=3-6"));
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.download(blob.getId(), null, request, response);
+
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.filename"))
+                .isEqualTo(attachmentService.pathFor(blob.getId()).toAbsolutePath().normalize().toString());
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.start")).isEqualTo(3L);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.end")).isEqualTo(7L);
+        assertThat(response.getContentLengthLong()).isEqualTo(4);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    // Eight clients pull a 64 MiB file at once through the transferTo path. Each download's
+    // heap allocation is measured on its own thread and must not grow with the file: the
+    // body is never staged through the heap, so memory stays flat however large it is.
+    @Test
+    void concurrentLargeDownloadsKeepTheHeapFlat() throws Exception {
+        long size = 64L * 1024 * 1024;
+        int clients = 8;
+        AttachmentService largeFiles = new AttachmentService(repository, directory.toString(), size);
+        AttachmentController largeController = new AttachmentController(largeFiles);
+        AttachmentBlob blob = largeFiles.store(new PatternStream(size), "application/octet-stream", "u1");
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<long[]>> downloads = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                downloads.add(pool.submit(() -> {
+                    CountingResponse response = new CountingResponse();
+                    long before = threads.getCurrentThreadAllocatedBytes();
+                    largeController.download(blob.getId(), null, request(blob, Map.of()), response);
+                    return new long[]{response.written, threads.getCurrentThreadAllocatedBytes() - before};
+                }));
+            }
+            long maxAllocated = 0;
+            for (Future<long[]> download : downloads) {
+                long[] result = download.get(2, TimeUnit.MINUTES);
+                assertThat(result[0]).isEqualTo(size);
+                maxAllocated = Math.max(maxAllocated, result[1]);
+            }
+            System.out.printf("%d concurrent downloads of %d MiB: at most %d KiB allocated per download%n",
+                    clients, size >> 20, maxAllocated >> 10);
+            assertThat(maxAllocated).isLessThan(size / 64);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private AttachmentBlob storeDigits() throws IOException {
+        return attachmentService.store(new ByteArrayInputStream(DIGITS), "text/plain", "u1");
+    }
+
+    private MockHttpServletResponse downloadWith(AttachmentBlob blob, Map<String, String> headers) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.download(blob.getId(), null, request(blob, headers), response);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(AttachmentBlob blob, Map<String, String> headers) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/attachments/" + blob.getId());
+        headers.forEach(request::addHeader);
+        return request;
+    }
+
+    // Generates the upload on the fly so the test itself doesn't hold the file in memory
+    private static class PatternStream extends InputStream {
+        private long remaining;
+
+        PatternStream(long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            return remaining-- > 0 ? (int) (remaining % 251) : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = (int) Math.min(length, remaining);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) (--remaining % 251);
+            }
+            return count;
+        }
+    }
+
+    // Counts the body instead of buffering it like MockHttpServletResponse does
+    private static class CountingResponse extends MockHttpServletResponse {
+        private long written;
+
+        private final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                written++;
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) {
+                written += length;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+            }
+        };
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return out;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.chat.controller;
+
+import com.chat.model.User;
+import com.chat.repository.reactive.*;
+import com.chat.service.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Synthetic comparison of the two REST stacks on a latency-bound read: the same user lookup
+// with the same simulated store latency, served by the servlet controller on a Tomcat-sized
+// worker pool and by the WebFlux controller on the reactive driver's timers. It isolates the
+// threading model only; writes in the reactive profile still block on the bounded elastic pool.
+class BlockingVsReactiveComparisonTest {
+
+    private static final int REQUESTS = 2000;
+    private static final int WORKER_THREADS = 200;
+    private static final long LATENCY_MS = 50;
+
+    @Test
+    void reactiveReadsOutrunAThreadPerRequestUnderConcurrentLoad() throws Exception {
+        User user = new User();
+        user.setId("u1");
+
+        UserService userService = mock(UserService.class);
+        when(userService.findById(anyString())).thenAnswer(i -> {
+            Thread.sleep(LATENCY_MS);
+            return Optional.of(user);
+        });
+        RestApiController blocking = new RestApiController(
+                userService, mock(ChatService.class), mock(ReadReceiptService.class), mock(InboxService.class));
+
+        ReactiveUserRepository userRepository = mock(ReactiveUserRepository.class);
+        when(userRepository.findById(anyString()))
+                .thenAnswer(i -> Mono.just(user).delayElement(Duration.ofMillis(LATENCY_MS)));
+        ReactiveRestApiController reactive = new ReactiveRestApiController(
+                userRepository, mock(ReactiveConversationRepository.class), mock(ReactiveMessageRepository.class),
+                mock(ReactiveGroupRepository.class), mock(ReactiveInboxEntryRepository.class),
+                mock(ReactiveReadWatermarkRepository.class), userService, mock(ChatService.class),
+                mock(ReadReceiptService.class), mock(InboxService.class));
+
+        // Warm both paths up before timing them
+        runBlocking(blocking, REQUESTS / 4);
+        runReactive(reactive, REQUESTS / 4);
+
+        long blockingMillis = runBlocking(blocking, REQUESTS);
+        Set<String> reactiveThreads = ConcurrentHashMap.newKeySet();
+        long started = System.nanoTime();
+        long served = Flux.range(0, REQUESTS)
+                .flatMap(i -> reactive.getUser("u1")
+                        .doOnNext(response -> reactiveThreads.add(Thread.currentThread().getName())), REQUESTS)
+                .filter(response -> response.getBody() == user)
+                .count()
+                .block(Duration.ofMinutes(1));
+        long reactiveMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        System.out.printf("%d reads at %d ms latency: blocking (%d workers) %d ms, reactive (%d threads) %d ms%n",
+                REQUESTS, LATENCY_MS, WORKER_THREADS, blockingMillis, reactiveThreads.size(), reactiveMillis);
+        assertThat(served).isEqualTo(REQUESTS);
+        // A thread per request can't beat waves of pool-size requests, each a full latency long
+        assertThat(blockingMillis).isGreaterThanOrEqualTo(REQUESTS / WORKER_THREADS * LATENCY_MS);
+        assertThat(reactiveThreads.size()).isLessThanOrEqualTo(Runtime.getRuntime().availableProcessors());
+        assertThat(reactiveMillis).isLessThan(blockingMillis / 2);
+    }
+
+    private static long runBlocking(RestApiController controller, int requests) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(WORKER_THREADS);
+        try {
+            long started = System.nanoTime();
+            List<Future<ResponseEntity<?>>> responses = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                responses.add(workers.submit(() -> controller.getUser("u1")));
+            }
+            for (Future<ResponseEntity<?>> response : responses) {
+                assertThat(response.get(1, TimeUnit.MINUTES).getStatusCode().is2xxSuccessful()).isTrue();
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private static void runReactive(ReactiveRestApiController controller, int requests) {
+        Flux.range(0, requests)
+                .flatMap(i -> controller.getUser("u1"), requests)
+                .blockLast(Duration.ofMinutes(1));
+    }
+}
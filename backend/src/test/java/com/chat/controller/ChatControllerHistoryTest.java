@@ -0,0 +1,151 @@
+package com.chat.controller;
+
+import com.chat.analytics.TrafficAnalytics;
+import com.chat.dispatch.ConversationLanes;
+import com.chat.dispatch.SendDeduplicator;
+import com.chat.dto.HistoryChunk;
+import com.chat.dto.HistoryRequest;
+import com.chat.model.Message;
+import com.chat.repository.*;
+import com.chat.retention.RetentionPolicy;
+import com.chat.service.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.springframework.data.domain.Pageable;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ChatControllerHistoryTest {
+
+    private static final Comparator<Message> NEWEST_FIRST = Comparator.comparing(Message::getTimestamp)
+            .thenComparing(Message::getId)
+            .reversed();
+
+    private final List<Message> stored = new ArrayList<>();
+    private SimpMessagingTemplate messagingTemplate;
+    private MessageRepository messageRepository;
+    private ChatController controller;
+
+    @BeforeEach
+    void setUp() {
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        messageRepository = mock(MessageRepository.class);
+        // The repository answers from memory with the same predicates its queries express
+        when(messageRepository.findByConversationIdAndDeletedFalseAndTimestampBeforeOrderByTimestampDesc(
+                anyString(), any(Instant.class), any(Pageable.class))).thenAnswer(i -> page(i.getArgument(0),
+                m -> m.getTimestamp().isBefore(i.getArgument(1)), i.getArgument(2)));
+        when(messageRepository.findHistoryPageBefore(anyString(), any(Instant.class), anyString(), any(Pageable.class)))
+                .thenAnswer(i -> {
+                    Instant before = i.getArgument(1);
+                    String beforeId = i.getArgument(2);
+                    return page(i.getArgument(0), m -> m.getTimestamp().isBefore(before)
+                            || m.getTimestamp().equals(before) && m.getId().compareTo(beforeId) < 0, i.getArgument(3));
+                });
+
+        ChatService chatService = new ChatService(messageRepository, mock(ConversationRepository.class),
+                mock(UserRepository.class), mock(GroupRepository.class), mock(ReadReceiptService.class),
+                mock(org.springframework.data.mongodb.core.MongoTemplate.class), mock(AttachmentService.class),
+                mock(RetentionPolicy.class), mock(InboxService.class), mock(SendDeduplicator.class));
+        controller = new ChatController(messagingTemplate, chatService, Optional.empty(),
+                mock(ConversationLanes.class), mock(TrafficAnalytics.class));
+    }
+
+    @Test
+    void pagingWalksMessagesThatShareTheBoundaryMillisecond() {
+        // A burst lands in one millisecond, straddling every page boundary
+        Instant burst = Instant.parse("2026-03-01T12:00:00.123Z");
+        for (int i = 0; i < 120; i++) {
+            stored.add(message(String.format("m%03d", i), burst));
+        }
+        stored.add(message("m900", burst.minusMillis(1)));
+
+        List<String> seen = new ArrayList<>();
+        HistoryChunk last = request(null, null);
+        seen.addAll(idsOf(last));
+        int pages = 1;
+        while (last.getNextCursor() != null) {
+            assertThat(last.getNextCursor()).isEqualTo(burst);
+            last = request(last.getNextCursor(), last.getNextCursorId());
+            seen.addAll(idsOf(last));
+            pages++;
+        }
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(seen).hasSize(121).doesNotHaveDuplicates();
+        assertThat(seen).containsExactlyElementsOf(stored.stream().sorted(NEWEST_FIRST).map(Message::getId).toList());
+    }
+
+    @Test
+    void cursorIsTheOldestMessageOfAFullPage() {
+        Instant t = Instant.parse("2026-03-01T12:00:00Z");
+        for (int i = 0; i < 60; i++) {
+            stored.add(message(String.format("m%03d", i), t.plusMillis(i)));
+        }
+
+        HistoryChunk last = request(null, null);
+        assertThat(last.getNextCursor()).isEqualTo(t.plusMillis(10));
+        assertThat(last.getNextCursorId()).isEqualTo("m010");
+
+        HistoryChunk end = request(last.getNextCursor(), last.getNextCursorId());
+        assertThat(end.getNextCursor()).isNull();
+        assertThat(end.getNextCursorId()).isNull();
+    }
+
+    // Sends one history request; returns its chunks folded into one, with the final chunk's cursor
+    private HistoryChunk request(Instant before, String beforeId) {
+        clearInvocations(messagingTemplate);
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create();
+        headers.setSessionId("s1");
+        controller.history(HistoryRequest.builder()
+                .correlationId("h")
+                .conversationId("c1")
+                .before(before)
+                .beforeId(beforeId)
+                .limit(50)
+                .chunkSize(25)
+                .build(), headers);
+
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate, atLeastOnce()).convertAndSendToUser(eq("s1"), eq("/queue/history"),
+                payloads.capture(), ArgumentMatchers.<Map<String, Object>>any());
+        List<HistoryChunk> chunks = payloads.getAllValues().stream().map(HistoryChunk.class::cast).toList();
+        HistoryChunk last = chunks.get(chunks.size() - 1);
+        assertThat(last.isLast()).isTrue();
+        List<Message> messages = chunks.stream().flatMap(c -> c.getMessages().stream()).toList();
+        return HistoryChunk.builder()
+                .messages(messages)
+                .last(true)
+                .nextCursor(last.getNextCursor())
+                .nextCursorId(last.getNextCursorId())
+                .build();
+    }
+
+    private Stream<Message> page(String conversationId, Predicate<Message> older, Pageable pageable) {
+        return stored.stream()
+                .filter(m -> m.getConversationId().equals(conversationId) && !m.isDeleted())
+                .filter(older)
+                .sorted(NEWEST_FIRST)
+                .limit(pageable.getPageSize())
+                .toList()
+                .stream();
+    }
+
+    private static List<String> idsOf(HistoryChunk chunk) {
+        return chunk.getMessages().stream().map(Message::getId).toList();
+    }
+
+    private static Message message(String id, Instant timestamp) {
+        return Message.builder().id(id).conversationId("c1").timestamp(timestamp).build();
+    }
+}
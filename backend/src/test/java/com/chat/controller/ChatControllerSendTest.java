@@ -0,0 +1,141 @@
+package com.chat.controller;
+
+import com.chat.analytics.TrafficAnalytics;
+import com.chat.dispatch.ConversationLanes;
+import com.chat.dispatch.SendDeduplicator;
+import com.chat.dto.ChatMessage;
+import com.chat.model.Message;
+import com.chat.repository.*;
+import com.chat.retention.RetentionPolicy;
+import com.chat.service.*;
+import com.chat.wal.WriteAheadLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// With the WAL on, a send is broadcast before it reaches Mongo. Resends this node remembers
+// are answered before the broadcast; the rest are caught by the unique index at replication
+class ChatControllerSendTest {
+
+    private SimpMessagingTemplate messagingTemplate;
+    private MessageRepository messageRepository;
+    private WriteAheadLog writeAheadLog;
+    private ChatService chatService;
+    private ChatController controller;
+
+    @BeforeEach
+    void setUp() {
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        messageRepository = mock(MessageRepository.class);
+        writeAheadLog = mock(WriteAheadLog.class);
+        ConversationLanes lanes = mock(ConversationLanes.class);
+        doAnswer(i -> {
+            i.<Runnable>getArgument(1).run();
+            return null;
+        }).when(lanes).submit(anyString(), any(Runnable.class));
+
+        // A fresh deduplicator is what a restarted node, or one that never saw the original, has
+        chatService = chatService(new SendDeduplicator(new SimpleMeterRegistry(), 600_000, 256, 1 << 16));
+        controller = new ChatController(messagingTemplate, chatService, Optional.of(writeAheadLog), lanes,
+                mock(TrafficAnalytics.class));
+    }
+
+    @Test
+    void resendOfAnOriginalThisNodeNeverSawIsCorrectedAtReplication() {
+        Message original = Message.builder().id("orig").conversationId("c1").senderId("u1")
+                .clientMessageId("cm-1").content("hello").build();
+        when(messageRepository.findBySenderIdAndClientMessageId("u1", "cm-1")).thenReturn(Optional.of(original));
+        when(messageRepository.save(any(Message.class))).thenThrow(new DuplicateKeyException("E11000"));
+        Message[] logged = new Message[1];
+        when(writeAheadLog.append(any(Message.class))).thenAnswer(i -> {
+            logged[0] = i.getArgument(0);
+            logged[0].setId("dup-1");
+            return new WriteAheadLog.WalEntry(1, logged[0]);
+        });
+
+        for (int i = 0; i < 20; i++) {
+            controller.sendMessage(send("cm-1"));
+        }
+
+        // The filter has never seen the send, so it goes out without asking Mongo
+        verify(writeAheadLog, times(1)).append(any(Message.class));
+        assertThat(broadcastIds()).hasSize(20).containsOnly("dup-1");
+        verify(messageRepository, never()).findBySenderIdAndClientMessageId(anyString(), anyString());
+
+        // Replication hits the unique index and hands back the original to correct clients with
+        assertThat(chatService.persistMessageIfAbsent(logged[0])).contains(original);
+
+        controller.sendMessage(send("cm-1"));
+        verify(writeAheadLog, times(1)).append(any(Message.class));
+        assertThat(broadcastIds()).last().isEqualTo("orig");
+    }
+
+    @Test
+    void newSendIsLoggedOnceAndItsRetriesGetItsId() {
+        when(writeAheadLog.append(any(Message.class))).thenAnswer(i -> {
+            Message message = i.getArgument(0);
+            message.setId("new-1");
+            return new WriteAheadLog.WalEntry(1, message);
+        });
+
+        for (int i = 0; i < 10; i++) {
+            controller.sendMessage(send("cm-2"));
+        }
+
+        verify(writeAheadLog, times(1)).append(any(Message.class));
+        assertThat(broadcastIds()).hasSize(10).containsOnly("new-1");
+        verify(messageRepository, never()).findBySenderIdAndClientMessageId(anyString(), anyString());
+    }
+
+    @Test
+    void storeIsOnlyAskedWhenTheFilterMatchesAndTheWindowMisses() {
+        // One remembered send per sender, so a second send pushes the first out of the window
+        ChatService service = chatService(new SendDeduplicator(new SimpleMeterRegistry(), 600_000, 1, 1 << 16));
+        assertThat(service.findResend("u1", "cm-3")).isEmpty();
+        verifyNoInteractions(messageRepository);
+
+        Message first = Message.builder().id("m3").senderId("u1").clientMessageId("cm-3").build();
+        service.rememberSend(first);
+        service.rememberSend(Message.builder().id("m4").senderId("u1").clientMessageId("cm-4").build());
+        when(messageRepository.findBySenderIdAndClientMessageId("u1", "cm-3")).thenReturn(Optional.of(first));
+
+        assertThat(service.findResend("u1", "cm-4")).map(Message::getId).contains("m4");
+        verifyNoInteractions(messageRepository);
+        assertThat(service.findResend("u1", "cm-3")).contains(first);
+        verify(messageRepository).findBySenderIdAndClientMessageId("u1", "cm-3");
+    }
+
+    private ChatService chatService(SendDeduplicator deduplicator) {
+        return new ChatService(messageRepository, mock(ConversationRepository.class),
+                mock(UserRepository.class), mock(GroupRepository.class), mock(ReadReceiptService.class),
+                mock(MongoTemplate.class), mock(AttachmentService.class), mock(RetentionPolicy.class),
+                mock(InboxService.class), deduplicator);
+    }
+
+    private java.util.List<String> broadcastIds() {
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate, atLeastOnce()).convertAndSend(eq("/topic/conversation.c1"), payloads.capture());
+        return payloads.getAllValues().stream().map(p -> ((ChatMessage) p).getId()).toList();
+    }
+
+    private static ChatMessage send(String clientMessageId) {
+        ChatMessage message = new ChatMessage();
+        message.setConversationId("c1");
+        message.setSenderId("u1");
+        message.setSenderName("alice");
+        message.setContent("hello");
+        message.setClientMessageId(clientMessageId);
+        message.setType(ChatMessage.MessageType.CHAT);
+        return message;
+    }
+}
@@ -0,0 +1,114 @@
+package com.chat.controller;
+
+import com.chat.model.AttachmentBlob;
+import com.chat.model.Message;
+import com.chat.repository.AttachmentBlobRepository;
+import com.chat.service.AttachmentService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReactiveAttachmentControllerTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0};
+
+    @TempDir
+    Path directory;
+
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, AttachmentBlob> stored = new HashMap<>();
+        AttachmentBlobRepository repository = mock(AttachmentBlobRepository.class);
+        when(repository.findById(anyString())).thenAnswer(i -> Optional.ofNullable(stored.get(i.<String>getArgument(0))));
+        when(repository.save(any(AttachmentBlob.class))).thenAnswer(i -> {
+            AttachmentBlob blob = i.getArgument(0);
+            stored.put(blob.getId(), blob);
+            return blob;
+        });
+        AttachmentService attachmentService = new AttachmentService(repository, directory.toString(), 1024 * 1024);
+        client = WebTestClient.bindToController(new ReactiveAttachmentController(attachmentService)).build();
+    }
+
+    @Test
+    void uploadedImageRoundTripsInlineAndRevalidates() {
+        Message.Attachment attachment = upload(PNG, MediaType.IMAGE_PNG, "cat.png");
+        assertThat(attachment.getType()).isEqualTo("image/png");
+        assertThat(attachment.getSize()).isEqualTo(PNG.length);
+
+        String etag = client.get().uri(attachment.getUrl())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("X-Content-Type-Options", "nosniff")
+                .expectHeader().doesNotExist(HttpHeaders.CONTENT_DISPOSITION)
+                .expectHeader().contentType(MediaType.IMAGE_PNG)
+                .expectBody(byte[].class).isEqualTo(PNG)
+                .returnResult().getResponseHeaders().getETag();
+
+        client.get().uri(attachment.getUrl())
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    void scriptableUploadsAreServedAsDownloads() {
+        byte[] html = "<script>alert(1)</script>".getBytes(StandardCharsets.UTF_8);
+        Message.Attachment attachment = upload(html, MediaType.TEXT_HTML, "page.html");
+
+        client.get().uri(attachment.getUrl() + "?name=page.html")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("X-Content-Type-Options", "nosniff")
+                .expectHeader().value(HttpHeaders.CONTENT_DISPOSITION, value -> assertThat(value)
+                        .startsWith("attachment")
+                        .contains("page.html"));
+    }
+
+    @Test
+    void rangeRequestsReturnPartialContent() {
+        Message.Attachment attachment = upload(PNG, MediaType.IMAGE_PNG, "cat.png");
+
+        client.get().uri(attachment.getUrl())
+                .header(HttpHeaders.RANGE, "bytes=1-3")
+                .exchange()
+                .expectStatus().isEqualTo(206)
+                .expectBody(byte[].class).isEqualTo(new byte[]{'P', 'N', 'G'});
+    }
+
+    @Test
+    void unknownHashIsNotFound() {
+        client.get().uri(AttachmentService.URL_PREFIX + "0".repeat(64))
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    private Message.Attachment upload(byte[] content, MediaType type, String name) {
+        return client.post().uri(uriBuilder -> uriBuilder.path("/api/attachments")
+                        .queryParam("name", name)
+                        .queryParam("uploaderId", "u1")
+                        .build())
+                .contentType(type)
+                .bodyValue(content)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Message.Attachment.class)
+                .returnResult().getResponseBody();
+    }
+}
@@ -0,0 +1,197 @@
+package com.chat.dispatch;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConversationLanesTest {
+
+    private ConversationLanes lanes;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (lanes != null) {
+            lanes.shutdown();
+        }
+    }
+
+    @Test
+    void keepsPerConversationOrderUnderConcurrentLoad() throws Exception {
+        lanes = new ConversationLanes(new SimpleMeterRegistry(), 4, 16, 256, 5000, 5000);
+        int producers = 8;
+        int conversations = 200;
+        int perConversation = 250;
+
+        Map<String, List<Integer>> executed = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        for (int c = 0; c < conversations; c++) {
+            executed.put("conv-" + c, Collections.synchronizedList(new ArrayList<>()));
+            inFlight.put("conv-" + c, new AtomicInteger());
+        }
+
+        // Each conversation has a single sender thread, as a conversation's messages do per
+        // client session; producers interleave their conversations to mix the lanes
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int seq = 0; seq < perConversation; seq++) {
+                    for (int c = producer; c < conversations; c += producers) {
+                        String conversationId = "conv-" + c;
+                        int value = seq;
+                        lanes.submit(conversationId, () -> {
+                            if (inFlight.get(conversationId).incrementAndGet() != 1) {
+                                overlaps.incrementAndGet();
+                            }
+                            executed.get(conversationId).add(value);
+                            inFlight.get(conversationId).decrementAndGet();
+                        });
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        lanes.shutdown();
+
+        assertThat(overlaps).hasValue(0);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < perConversation; i++) {
+            expected.add(i);
+        }
+        executed.forEach((conversationId, values) ->
+                assertThat(values).as(conversationId).containsExactlyElementsOf(expected));
+    }
+
+    @Test
+    void shutdownRunsEverythingAlreadyAccepted() throws InterruptedException {
+        lanes = new ConversationLanes(new SimpleMeterRegistry(), 2, 8, 10_000, 1000, 10_000);
+        AtomicInteger ran = new AtomicInteger();
+        for (int i = 0; i < 2000; i++) {
+            lanes.submit("conv-" + (i % 10), () -> {
+                LockSupport.parkNanos(10_000);
+                ran.incrementAndGet();
+            });
+        }
+
+        lanes.shutdown();
+
+        assertThat(ran).hasValue(2000);
+        assertThatThrownBy(() -> lanes.submit("conv-1", ran::incrementAndGet))
+                .hasMessageContaining("shutting down");
+    }
+
+    @Test
+    void fullLanePushesBackThenRejects() throws InterruptedException {
+        lanes = new ConversationLanes(new SimpleMeterRegistry(), 1, 8, 2, 50, 5000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch blocking = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+
+        lanes.submit("conv-1", () -> {
+            blocking.countDown();
+            awaitQuietly(release);
+        });
+        assertThat(blocking.await(5, TimeUnit.SECONDS)).isTrue();
+        lanes.submit("conv-1", ran::incrementAndGet);
+        lanes.submit("conv-1", ran::incrementAndGet);
+
+        long started = System.nanoTime();
+        assertThatThrownBy(() -> lanes.submit("conv-1", ran::incrementAndGet))
+                .hasMessageContaining("full");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).isGreaterThanOrEqualTo(40);
+
+        // A sender blocked on a full lane gets in as soon as the lane moves
+        Thread sender = new Thread(() -> lanes.submit("conv-1", ran::incrementAndGet));
+        sender.start();
+        release.countDown();
+        sender.join(5000);
+
+        lanes.shutdown();
+        assertThat(ran).hasValue(3);
+    }
+
+    @Test
+    void contextShutdownDrainsLanesBeforeTheBrokerStops() {
+        List<String> events = new CopyOnWriteArrayList<>();
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.registerBean("simpleBrokerMessageHandler", RecordingLifecycle.class,
+                () -> new RecordingLifecycle("broker stopped", events));
+        context.registerBean("subProtocolWebSocketHandler", RecordingLifecycle.class,
+                () -> new RecordingLifecycle("websocket stopped", events));
+        context.register(ConversationLanes.class);
+        context.refresh();
+        lanes = context.getBean(ConversationLanes.class);
+        assertThat(lanes.isRunning()).isTrue();
+
+        for (int i = 0; i < 20; i++) {
+            int task = i;
+            lanes.submit("conv-1", () -> {
+                LockSupport.parkNanos(5_000_000);
+                events.add("task " + task);
+            });
+        }
+        context.close();
+
+        assertThat(lanes.isRunning()).isFalse();
+        assertThat(events).hasSize(22);
+        assertThat(events.subList(0, 20)).allMatch(event -> event.startsWith("task "));
+        assertThat(events.subList(20, 22)).containsExactlyInAnyOrder("broker stopped", "websocket stopped");
+    }
+
+    // Stands in for the broker and WebSocket handler, which share the default phase
+    private static class RecordingLifecycle implements SmartLifecycle {
+        private final String name;
+        private final List<String> events;
+        private volatile boolean running;
+
+        RecordingLifecycle(String name, List<String> events) {
+            this.name = name;
+            this.events = events;
+        }
+
+        @Override
+        public void start() {
+            running = true;
+        }
+
+        @Override
+        public void stop() {
+            running = false;
+            events.add(name);
+        }
+
+        @Override
+        public boolean isRunning() {
+            return running;
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
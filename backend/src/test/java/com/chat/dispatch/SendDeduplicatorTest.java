@@ -0,0 +1,104 @@
+package com.chat.dispatch;
+
+import com.chat.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SendDeduplicatorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void burstOfResendsIsAnsweredWithTheOriginal() throws Exception {
+        SendDeduplicator deduplicator = new SendDeduplicator(meterRegistry, 600_000, 1024, 1 << 20);
+        int senders = 8;
+        int sends = 500;
+        int copies = 4;
+
+        // One thread per sender, as a sender's retries share its conversation's lane; every
+        // send is repeated in bursts the way a flapping connection replays its pending sends
+        ExecutorService pool = Executors.newFixedThreadPool(senders);
+        Map<String, Map<String, String>> originals = new ConcurrentHashMap<>();
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger mismatched = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int s = 0; s < senders; s++) {
+            String senderId = "user-" + s;
+            futures.add(pool.submit(() -> {
+                Map<String, String> mine = new HashMap<>();
+                for (int burst = 0; burst < sends; burst += 50) {
+                    for (int copy = 0; copy < copies; copy++) {
+                        for (int i = burst; i < burst + 50; i++) {
+                            String clientMessageId = "cm-" + i;
+                            Optional<Message> original = deduplicator.mightContain(senderId, clientMessageId)
+                                    ? deduplicator.findRecent(senderId, clientMessageId)
+                                    : Optional.empty();
+                            if (original.isPresent()) {
+                                if (!original.get().getId().equals(mine.get(clientMessageId))) {
+                                    mismatched.incrementAndGet();
+                                }
+                                continue;
+                            }
+                            Message message = Message.builder().id(UUID.randomUUID().toString())
+                                    .senderId(senderId).clientMessageId(clientMessageId).build();
+                            deduplicator.record(senderId, clientMessageId, message);
+                            mine.put(clientMessageId, message.getId());
+                            created.incrementAndGet();
+                        }
+                    }
+                }
+                originals.put(senderId, mine);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertThat(created).hasValue(senders * sends);
+        assertThat(mismatched).hasValue(0);
+        assertThat(meterRegistry.counter("chat.dedup.duplicates").count())
+                .isEqualTo((double) senders * sends * (copies - 1));
+        originals.forEach((senderId, mine) -> assertThat(mine).hasSize(sends));
+    }
+
+    @Test
+    void aFreshInstanceKnowsNothingSoTheStoreMustBeAsked() {
+        SendDeduplicator restarted = new SendDeduplicator(meterRegistry, 600_000, 256, 1 << 20);
+
+        assertThat(restarted.mightContain("user-1", "cm-1")).isFalse();
+        assertThat(restarted.findRecent("user-1", "cm-1")).isEmpty();
+    }
+
+    @Test
+    void evictedSendsStillPassTheFilterSoTheStoreIsAsked() {
+        SendDeduplicator deduplicator = new SendDeduplicator(meterRegistry, 600_000, 2, 1 << 20);
+        for (String id : List.of("cm-1", "cm-2", "cm-3")) {
+            deduplicator.record("user-1", id, Message.builder().id("m-" + id).build());
+        }
+
+        assertThat(deduplicator.findRecent("user-1", "cm-1")).isEmpty();
+        assertThat(deduplicator.mightContain("user-1", "cm-1")).isTrue();
+        assertThat(deduplicator.findRecent("user-1", "cm-3")).map(Message::getId).contains("m-cm-3");
+    }
+
+    @Test
+    void filterCoversAWholeWindowAcrossARotation() throws InterruptedException {
+        SendDeduplicator deduplicator = new SendDeduplicator(meterRegistry, 100, 16, 1 << 16);
+        deduplicator.record("user-1", "cm-1", Message.builder().id("m-1").build());
+
+        Thread.sleep(120);
+        // Rotated once: the send now sits in the previous generation
+        assertThat(deduplicator.mightContain("user-1", "cm-1")).isTrue();
+
+        Thread.sleep(120);
+        assertThat(deduplicator.mightContain("user-1", "cm-1")).isFalse();
+    }
+}
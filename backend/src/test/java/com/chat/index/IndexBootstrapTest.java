@@ -0,0 +1,160 @@
+package com.chat.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IndexBootstrapTest {
+
+    @Document("widgets")
+    @CompoundIndex(name = "owner_updatedAt", def = "{ 'owner': 1, 'updatedAt': -1 }")
+    static class Widget {
+        String id;
+        String owner;
+        long updatedAt;
+        long expiresAt;
+    }
+
+    private MongoTemplate mongoTemplate;
+    private IndexOperations indexOps;
+    private MongoMappingContext mappingContext;
+
+    private final IndexContributor expiry = new IndexContributor() {
+        @Override
+        public Class<?> entityType() {
+            return Widget.class;
+        }
+
+        @Override
+        public List<IndexDefinition> indexes() {
+            return List.of(new Index().on("expiresAt", Sort.Direction.ASC).named("expiresAt").sparse());
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        indexOps = mock(IndexOperations.class);
+        when(mongoTemplate.indexOps("widgets")).thenReturn(indexOps);
+        mappingContext = new MongoMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(Widget.class));
+        mappingContext.initialize();
+    }
+
+    @Test
+    void verifyRejectsAnIndexWithTheSameKeysInAnotherOrder() {
+        existing(index("updatedAt_owner", IndexField.create("updatedAt", Sort.Direction.DESC),
+                        IndexField.create("owner", Sort.Direction.ASC)),
+                index("expiresAt", IndexField.create("expiresAt", Sort.Direction.ASC)));
+
+        assertThatThrownBy(() -> bootstrap("verify").run(null))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("owner");
+    }
+
+    @Test
+    void verifyAcceptsDeclaredAndContributedIndexes() {
+        existing(index("owner_updatedAt", IndexField.create("owner", Sort.Direction.ASC),
+                        IndexField.create("updatedAt", Sort.Direction.DESC)),
+                IndexInfo.indexInfoOf(org.bson.Document.parse("{ name: 'expiresAt', key: { expiresAt: 1 }, sparse: true }")));
+
+        assertThatCode(() -> bootstrap("verify").run(null)).doesNotThrowAnyException();
+        verify(indexOps, never()).ensureIndex(any());
+    }
+
+    @Test
+    void verifyRejectsAnIndexWithTheRightKeysButOtherOptions() {
+        // Built without sparse, so it holds every message and isn't the declared index
+        existing(index("owner_updatedAt", IndexField.create("owner", Sort.Direction.ASC),
+                        IndexField.create("updatedAt", Sort.Direction.DESC)),
+                index("expiresAt", IndexField.create("expiresAt", Sort.Direction.ASC)));
+
+        assertThatThrownBy(() -> bootstrap("verify").run(null))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("other options: [widgets {\"expiresAt\": 1}");
+    }
+
+    @Test
+    void optionsThatChangeWhatAnIndexEnforcesMustMatch() {
+        org.bson.Document unique = org.bson.Document.parse("{ name: 'a', unique: true }");
+        assertThat(IndexBootstrap.optionsMatch(unique, info("{ unique: true }"))).isTrue();
+        assertThat(IndexBootstrap.optionsMatch(unique, info("{}"))).isFalse();
+
+        org.bson.Document ttl = new Index().on("expiresAt", Sort.Direction.ASC).expire(Duration.ZERO).getIndexOptions();
+        assertThat(IndexBootstrap.optionsMatch(ttl, info("{ expireAfterSeconds: 0 }"))).isTrue();
+        assertThat(IndexBootstrap.optionsMatch(ttl, info("{ expireAfterSeconds: 3600 }"))).isFalse();
+        assertThat(IndexBootstrap.optionsMatch(ttl, info("{}"))).isFalse();
+
+        org.bson.Document partial = org.bson.Document.parse(
+                "{ unique: true, partialFilterExpression: { clientMessageId: { $type: 'string' } } }");
+        assertThat(IndexBootstrap.optionsMatch(partial,
+                info("{ unique: true, partialFilterExpression: { clientMessageId: { $type: 'string' } } }"))).isTrue();
+        assertThat(IndexBootstrap.optionsMatch(partial,
+                info("{ unique: true, partialFilterExpression: { clientMessageId: { $exists: true } } }"))).isFalse();
+        assertThat(IndexBootstrap.optionsMatch(partial, info("{ unique: true }"))).isFalse();
+
+        // The name and build flags don't change what the index holds
+        assertThat(IndexBootstrap.optionsMatch(org.bson.Document.parse("{ name: 'b', background: true }"),
+                info("{ name: 'other' }"))).isTrue();
+    }
+
+    @Test
+    void verifyReportsAMissingContributedIndex() {
+        existing(index("owner_updatedAt", IndexField.create("owner", Sort.Direction.ASC),
+                IndexField.create("updatedAt", Sort.Direction.DESC)));
+
+        assertThatThrownBy(() -> bootstrap("verify").run(null))
+                .hasMessageContaining("expiresAt");
+    }
+
+    @Test
+    void contributedIndexesFollowTheMode() {
+        bootstrap("create").run(null);
+        verify(indexOps, times(2)).ensureIndex(any());
+
+        clearInvocations(indexOps);
+        bootstrap("off").run(null);
+        verifyNoInteractions(indexOps);
+    }
+
+    private IndexBootstrap bootstrap(String mode) {
+        return new IndexBootstrap(mongoTemplate, mappingContext, mock(ConfigurableApplicationContext.class),
+                List.of(expiry), mode);
+    }
+
+    private void existing(IndexInfo... indexes) {
+        when(indexOps.getIndexInfo()).thenReturn(List.of(indexes));
+    }
+
+    // An index as listIndexes reports it, keyed on expiresAt with the given options
+    private static IndexInfo info(String options) {
+        org.bson.Document info = org.bson.Document.parse(options);
+        info.putIfAbsent("name", "expiresAt");
+        info.put("key", new org.bson.Document("expiresAt", 1));
+        return IndexInfo.indexInfoOf(info);
+    }
+
+    private static IndexInfo index(String name, IndexField... fields) {
+        return new IndexInfo(List.of(fields), name, false, false, "");
+    }
+}
@@ -0,0 +1,238 @@
+package com.chat.index;
+
+import com.chat.retention.RetentionIndexes;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyPath;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.core.support.AbstractRepositoryMetadata;
+import org.springframework.data.repository.query.parser.Part;
+import org.springframework.data.repository.query.parser.PartTree;
+import org.springframework.data.util.TypeInformation;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Every repository finder, blocking and reactive, must be answerable from an index without a
+// collection scan or an in-memory sort. The query shape is taken from the finder itself: the
+// PartTree Spring Data derives from the method name, or the JSON of its @Query. A new finder
+// without a supporting index, or an index change that strands one, fails here.
+class IndexCoverageTest {
+
+    private static final Set<Part.Type> EQUALITY = EnumSet.of(Part.Type.SIMPLE_PROPERTY, Part.Type.TRUE,
+            Part.Type.FALSE, Part.Type.IN, Part.Type.CONTAINING, Part.Type.STARTING_WITH, Part.Type.LIKE,
+            Part.Type.REGEX, Part.Type.IS_NULL);
+    private static final Set<String> EQUALITY_OPERATORS = Set.of("$eq", "$in", "$all");
+
+    private final MongoMappingContext mappingContext = new MongoMappingContext();
+    private final MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+
+    // The fields a finder filters on by equality, the ones it only bounds or filters, and its sort
+    record Shape(Set<String> equality, Set<String> filtered, List<Map.Entry<String, Integer>> sort) {
+    }
+
+    // Index keys in order, plus the fields of its partial filter if it has one
+    record IndexShape(Document keys, Set<String> partialFields) {
+    }
+
+    @Test
+    void everyRepositoryFinderHasASupportingIndex() throws ClassNotFoundException {
+        List<String> uncovered = new ArrayList<>();
+        int checked = 0;
+        for (Class<?> repository : repositoryInterfaces()) {
+            Class<?> domainType = AbstractRepositoryMetadata.getMetadata(repository).getDomainType();
+            List<IndexShape> indexes = indexShapes(domainType);
+            for (Method method : repository.getDeclaredMethods()) {
+                if (method.isDefault() || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                Shape shape = shapeOf(method, domainType);
+                checked++;
+                if (indexes.stream().noneMatch(index -> covers(index, shape))) {
+                    uncovered.add(repository.getSimpleName() + "." + method.getName() + " " + shape);
+                }
+            }
+        }
+
+        assertThat(checked).isGreaterThan(30);
+        assertThat(uncovered).as("finders without a supporting index").isEmpty();
+    }
+
+    @Test
+    void shapesAreDerivedFromTheFinders() throws NoSuchMethodException {
+        Shape history = shapeOf(com.chat.repository.MessageRepository.class
+                .getMethod("findByConversationIdAndDeletedFalseOrderByTimestampDesc", String.class,
+                        org.springframework.data.domain.Pageable.class), com.chat.model.Message.class);
+        assertThat(history.equality()).containsExactlyInAnyOrder("conversationId", "deleted");
+        assertThat(history.sort()).containsExactly(Map.entry("timestamp", -1));
+
+        Shape membership = shapeOf(com.chat.repository.GroupRepository.class
+                .getMethod("findMembershipById", String.class), com.chat.model.Group.class);
+        assertThat(membership.equality()).containsExactly("_id");
+    }
+
+    @Test
+    void coverageFollowsIndexKeyOrder() {
+        Shape shape = new Shape(Set.of("userId", "removed"), Set.of(), List.of(Map.entry("updatedAt", -1)));
+
+        assertThat(covers(Document.parse("{ userId: 1, removed: 1, updatedAt: -1 }"), shape)).isTrue();
+        // Walking the index backwards gives the same order
+        assertThat(covers(Document.parse("{ userId: 1, removed: 1, updatedAt: 1 }"), shape)).isTrue();
+        // An equality key after the sort key is filtered while walking the index, still in order
+        assertThat(covers(Document.parse("{ userId: 1, updatedAt: -1, removed: 1 }"), shape)).isTrue();
+        // Sort key first: nothing bounds the scan, so every user's rows are read
+        assertThat(covers(Document.parse("{ updatedAt: -1, userId: 1 }"), shape)).isFalse();
+        // Bounded, but rows come back in key order and need an in-memory sort
+        assertThat(covers(Document.parse("{ userId: 1, removed: 1 }"), shape)).isFalse();
+
+        Shape bySender = new Shape(Set.of("senderId"), Set.of(), List.of());
+        IndexShape partial = new IndexShape(Document.parse("{ senderId: 1, clientMessageId: 1 }"), Set.of("clientMessageId"));
+        assertThat(covers(partial, bySender)).isFalse();
+        assertThat(covers(partial, new Shape(Set.of("senderId", "clientMessageId"), Set.of(), List.of()))).isTrue();
+    }
+
+    @Test
+    void contributedIndexesAreVerifiedInKeyOrder() {
+        assertThat(IndexBootstrap.keysOf(Document.parse("{ a: 1, b: -1 }")))
+                .isNotEqualTo(IndexBootstrap.keysOf(Document.parse("{ b: -1, a: 1 }")));
+        assertThat(new RetentionIndexes(false).indexes()).extracting(index -> index.getIndexKeys().keySet())
+                .containsExactly(Set.of("expiresAt"), Set.of("deletedAt"));
+        assertThat(new RetentionIndexes(true).indexes().get(0).getIndexOptions().get("expireAfterSeconds"))
+                .isEqualTo(0L);
+    }
+
+    // Partial indexes only hold some documents, so they count only when the finder pins their filter fields
+    private static boolean covers(IndexShape index, Shape shape) {
+        return shape.equality().containsAll(index.partialFields()) && covers(index.keys(), shape);
+    }
+
+    // An index serves the finder if its leading keys are equality fields (bounding the scan),
+    // and, when the finder sorts, the sort keys come right after that equality prefix in the
+    // same or fully reversed direction.
+    private static boolean covers(Document keys, Shape shape) {
+        List<Map.Entry<String, Object>> fields = new ArrayList<>(keys.entrySet());
+        int prefix = 0;
+        while (prefix < fields.size() && shape.equality().contains(fields.get(prefix).getKey())) {
+            prefix++;
+        }
+        if (prefix == 0) {
+            return shape.equality().isEmpty() && !shape.sort().isEmpty()
+                    && sortMatches(fields, 0, shape.sort());
+        }
+        return shape.sort().isEmpty() || sortMatches(fields, prefix, shape.sort());
+    }
+
+    private static boolean sortMatches(List<Map.Entry<String, Object>> fields, int from, List<Map.Entry<String, Integer>> sort) {
+        if (fields.size() < from + sort.size()) {
+            return false;
+        }
+        Boolean reversed = null;
+        for (int i = 0; i < sort.size(); i++) {
+            Map.Entry<String, Object> field = fields.get(from + i);
+            if (!field.getKey().equals(sort.get(i).getKey())) {
+                return false;
+            }
+            boolean flipped = ((Number) field.getValue()).intValue() != sort.get(i).getValue();
+            if (reversed != null && reversed != flipped) {
+                return false;
+            }
+            reversed = flipped;
+        }
+        return true;
+    }
+
+    private List<IndexShape> indexShapes(Class<?> domainType) {
+        List<IndexShape> shapes = new ArrayList<>();
+        shapes.add(new IndexShape(new Document("_id", 1), Set.of()));
+        for (IndexDefinition index : resolver.resolveIndexFor(TypeInformation.of(domainType))) {
+            Document partialFilter = index.getIndexOptions().get("partialFilterExpression", Document.class);
+            shapes.add(new IndexShape(index.getIndexKeys(),
+                    partialFilter != null ? partialFilter.keySet() : Set.of()));
+        }
+        return shapes;
+    }
+
+    private Shape shapeOf(Method method, Class<?> domainType) {
+        Query query = method.getAnnotation(Query.class);
+        if (query != null) {
+            return shapeOf(query);
+        }
+
+        PartTree tree = new PartTree(method.getName(), domainType);
+        Set<String> equality = new LinkedHashSet<>();
+        Set<String> filtered = new LinkedHashSet<>();
+        for (Part part : tree.getParts()) {
+            (EQUALITY.contains(part.getType()) ? equality : filtered).add(fieldName(part.getProperty()));
+        }
+        List<Map.Entry<String, Integer>> sort = new ArrayList<>();
+        for (Sort.Order order : tree.getSort()) {
+            sort.add(Map.entry(fieldName(PropertyPath.from(order.getProperty(), domainType)),
+                    order.isAscending() ? 1 : -1));
+        }
+        return new Shape(equality, filtered, sort);
+    }
+
+    // Placeholders become strings so the query parses; operator values say equality or range
+    private static Shape shapeOf(Query query) {
+        Document filter = Document.parse(query.value().replaceAll("\\?(\\d+)", "'?$1'"));
+        Set<String> equality = new LinkedHashSet<>();
+        Set<String> filtered = new LinkedHashSet<>();
+        classify(filter, equality, filtered);
+        List<Map.Entry<String, Integer>> sort = new ArrayList<>();
+        if (!query.sort().isEmpty()) {
+            Document.parse(query.sort()).forEach((field, direction) ->
+                    sort.add(Map.entry(field, ((Number) direction).intValue())));
+        }
+        return new Shape(equality, filtered, sort);
+    }
+
+    private static void classify(Document filter, Set<String> equality, Set<String> filtered) {
+        filter.forEach((field, value) -> {
+            if (field.equals("$or") || field.equals("$and")) {
+                // Branch predicates are applied while walking the index, after the equality prefix
+                for (Object branch : (List<?>) value) {
+                    Set<String> branchFields = new LinkedHashSet<>();
+                    classify((Document) branch, branchFields, branchFields);
+                    filtered.addAll(branchFields);
+                }
+            } else if (value instanceof Document operators && operators.keySet().stream().anyMatch(k -> k.startsWith("$"))) {
+                (EQUALITY_OPERATORS.containsAll(operators.keySet()) ? equality : filtered).add(field);
+            } else {
+                equality.add(field);
+            }
+        });
+    }
+
+    private String fieldName(PropertyPath path) {
+        return mappingContext.getPersistentPropertyPath(path).toDotPath(MongoPersistentProperty::getFieldName);
+    }
+
+    private static List<Class<?>> repositoryInterfaces() throws ClassNotFoundException {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition definition) {
+                return definition.getMetadata().isInterface();
+            }
+        };
+        scanner.addIncludeFilter(new AssignableTypeFilter(Repository.class));
+        List<Class<?>> repositories = new ArrayList<>();
+        for (BeanDefinition definition : scanner.findCandidateComponents("com.chat.repository")) {
+            repositories.add(Class.forName(definition.getBeanClassName()));
+        }
+        assertThat(repositories).isNotEmpty();
+        return repositories;
+    }
+}
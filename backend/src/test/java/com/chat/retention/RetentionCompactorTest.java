@@ -0,0 +1,222 @@
+package com.chat.retention;
+
+import com.chat.model.Conversation;
+import com.chat.model.Message;
+import com.chat.repository.MessageRepository;
+import com.chat.service.InboxService;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RetentionCompactorTest {
+
+    private final RetentionPolicy policy = new RetentionPolicy(Duration.ofDays(365), Duration.ofDays(90), Duration.ofDays(7));
+
+    private MongoTemplate mongoTemplate;
+    private MessageRepository messageRepository;
+    private InboxService inboxService;
+    private BulkOperations bulk;
+    private RetentionCompactor compactor;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        messageRepository = mock(MessageRepository.class);
+        inboxService = mock(InboxService.class);
+        bulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(Message.class))).thenReturn(bulk);
+        when(mongoTemplate.find(any(Query.class), eq(Conversation.class))).thenReturn(List.of(
+                Conversation.builder().id("c1").type(Conversation.ConversationType.GROUP).build()));
+        compactor = new RetentionCompactor(mongoTemplate, messageRepository, inboxService, policy, new SimpleMeterRegistry(),
+                true, false, false, 2, 0);
+    }
+
+    @Test
+    void shipsDisabledAndInDryRun() throws IOException {
+        Properties defaults = PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"));
+
+        assertThat(defaults.getProperty("chat.retention.enabled")).isEqualTo("false");
+        assertThat(defaults.getProperty("chat.retention.dry-run")).isEqualTo("true");
+        assertThat(defaults.getProperty("chat.retention.private")).isEqualTo("0");
+        assertThat(defaults.getProperty("chat.retention.group")).isEqualTo("0");
+    }
+
+    @Test
+    void backfillResumesFromCheckpointAndStopsAtNewestMessage() {
+        checkpoint(policy.signature(), "id-10");
+        newestMessage("id-20");
+        when(mongoTemplate.find(any(Query.class), eq(Message.class)))
+                .thenReturn(List.of(message("id-11", "c1"), message("id-12", "c1")), List.of(message("id-13", "c1")),
+                        List.of());
+
+        RetentionStatus status = compactor.run(false);
+
+        assertThat(status.getBackfilled()).isEqualTo(3);
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, atLeast(3)).find(queries.capture(), eq(Message.class));
+        Query first = queries.getAllValues().get(0);
+        assertThat(first.getSortObject()).isEqualTo(new Document("_id", 1));
+        assertThat(first.getLimit()).isEqualTo(2);
+        assertThat(idRange(first)).isEqualTo(new Document("$gt", "id-10").append("$lte", "id-20"));
+        // The next batch continues after the last message handled, not from the top
+        assertThat(idRange(queries.getAllValues().get(1))).isEqualTo(new Document("$gt", "id-12").append("$lte", "id-20"));
+
+        assertThat(savedCheckpoints()).containsExactly("id-12", "id-13", "id-20");
+        verify(bulk, times(2)).execute();
+    }
+
+    @Test
+    void nothingNewSinceCheckpointReadsNoMessages() {
+        checkpoint(policy.signature(), "id-20");
+        newestMessage("id-20");
+
+        RetentionStatus status = compactor.run(false);
+
+        assertThat(status.getBackfilled()).isZero();
+        verify(bulk, never()).execute();
+        assertThat(savedCheckpoints()).isEmpty();
+    }
+
+    @Test
+    void policyChangeRestartsTheWalk() {
+        checkpoint("private=PT0S,group=PT0S", "id-20");
+        newestMessage("id-20");
+        when(mongoTemplate.find(any(Query.class), eq(Message.class))).thenReturn(List.of());
+
+        compactor.run(false);
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, atLeastOnce()).find(queries.capture(), eq(Message.class));
+        assertThat(idRange(queries.getAllValues().get(0))).isEqualTo(new Document("$lte", "id-20"));
+    }
+
+    @Test
+    void policyChangeRestampsMessagesStampedUnderTheOldPolicy() {
+        checkpoint("private=PT0S,group=PT1H", "id-20");
+        newestMessage("id-20");
+        Message stale = message("id-5", "c1");
+        stale.setExpiresAt(stale.getTimestamp().plus(Duration.ofHours(1)));
+        stale.setExpiryPolicy("private=PT0S,group=PT1H");
+        when(mongoTemplate.find(any(Query.class), eq(Message.class))).thenReturn(List.of(stale), List.of());
+
+        compactor.run(false);
+
+        // Already-stamped messages are selected too, not only those without an expiry
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, atLeastOnce()).find(queries.capture(), eq(Message.class));
+        Document stampFilter = queries.getAllValues().get(0).getQueryObject().getList("$and", Document.class).get(1);
+        assertThat(stampFilter.getList("$or", Document.class)).containsExactly(
+                new Document("expiresAt", null),
+                new Document("expiryPolicy", new Document("$ne", policy.signature())));
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulk).updateOne(any(Query.class), update.capture());
+        Document set = update.getValue().getUpdateObject().get("$set", Document.class);
+        assertThat(set.get("expiresAt")).isEqualTo(policy.expiresAt(Conversation.ConversationType.GROUP, stale.getTimestamp()));
+        assertThat(set.get("expiryPolicy")).isEqualTo(policy.signature());
+    }
+
+    @Test
+    void expiredPurgeOnlyTrustsStampsFromTheCurrentPolicy() {
+        newestMessage(null);
+        when(mongoTemplate.find(any(Query.class), eq(Message.class))).thenReturn(List.of());
+
+        compactor.run(false);
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, atLeastOnce()).find(queries.capture(), eq(Message.class));
+        Document expired = queries.getAllValues().stream()
+                .map(Query::getQueryObject)
+                .filter(filter -> filter.containsKey("expiresAt"))
+                .findFirst()
+                .orElseThrow();
+        assertThat(expired.get("expiryPolicy")).isEqualTo(policy.signature());
+    }
+
+    @Test
+    void repairOnlyReplacesLastMessageOlderThanItsLookup() {
+        newestMessage(null);
+        when(mongoTemplate.find(any(Query.class), eq(Message.class)))
+                .thenReturn(List.of(message("id-1", "c1")), List.of());
+        when(mongoTemplate.remove(any(Query.class), eq(Message.class))).thenReturn(DeleteResult.acknowledged(1));
+        Message survivor = message("id-2", "c1");
+        survivor.setContent("still here");
+        survivor.setTimestamp(Instant.parse("2026-01-01T00:00:00Z"));
+        when(messageRepository.findFirstByConversationIdAndDeletedFalseOrderByTimestampDesc("c1"))
+                .thenReturn(Optional.of(survivor));
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Conversation.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 0L, null));
+
+        Instant before = Instant.now();
+        RetentionStatus status = compactor.run(false);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).updateFirst(query.capture(), any(UpdateDefinition.class), eq(Conversation.class));
+        Document filter = query.getValue().getQueryObject();
+        assertThat(filter.get("_id")).isEqualTo("c1");
+        List<?> or = filter.getList("$or", Object.class);
+        assertThat(or).contains(new Document("lastMessage", null));
+        Instant cutoff = (Instant) ((Document) ((Document) or.get(1)).get("lastMessage.timestamp")).get("$lt");
+        assertThat(cutoff).isAfterOrEqualTo(before);
+        // A newer message won the race, so nothing was modified and nothing is counted
+        assertThat(status.getConversationsRepaired()).isZero();
+
+        // Inbox rows get the survivor under the same cutoff
+        ArgumentCaptor<Conversation.LastMessage> lastMessage = ArgumentCaptor.forClass(Conversation.LastMessage.class);
+        verify(inboxService).onLastMessageRepaired(eq("c1"), lastMessage.capture(), eq(cutoff));
+        assertThat(lastMessage.getValue().getContent()).isEqualTo("still here");
+        assertThat(lastMessage.getValue().getTimestamp()).isEqualTo(survivor.getTimestamp());
+    }
+
+    private void checkpoint(String signature, String lastId) {
+        when(mongoTemplate.findById(RetentionCompactor.BACKFILL_STATE_ID, Document.class,
+                RetentionCompactor.STATE_COLLECTION))
+                .thenReturn(new Document("_id", RetentionCompactor.BACKFILL_STATE_ID)
+                        .append("policy", signature)
+                        .append("lastId", lastId));
+    }
+
+    private void newestMessage(String id) {
+        when(mongoTemplate.findOne(any(Query.class), eq(Message.class))).thenReturn(id != null ? message(id, "c1") : null);
+    }
+
+    private List<String> savedCheckpoints() {
+        ArgumentCaptor<UpdateDefinition> updates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, atLeast(0)).upsert(any(Query.class), updates.capture(), eq(RetentionCompactor.STATE_COLLECTION));
+        return updates.getAllValues().stream()
+                .map(u -> u.getUpdateObject().get("$set", Document.class).getString("lastId"))
+                .toList();
+    }
+
+    private static Document idRange(Query query) {
+        List<Document> and = query.getQueryObject().getList("$and", Document.class);
+        return (Document) and.get(0).get("_id");
+    }
+
+    private static Message message(String id, String conversationId) {
+        return Message.builder().id(id).conversationId(conversationId).timestamp(Instant.now()).build();
+    }
+}
@@ -0,0 +1,101 @@
+package com.chat.service;
+
+import com.chat.model.AttachmentBlob;
+import com.chat.repository.AttachmentBlobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AttachmentServiceTest {
+
+    static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 13, 'I', 'H', 'D', 'R'};
+    static final byte[] HTML = "<html><script>alert(document.cookie)</script></html>".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    private final Map<String, AttachmentBlob> stored = new HashMap<>();
+    private AttachmentService service;
+
+    @BeforeEach
+    void setUp() {
+        AttachmentBlobRepository repository = mock(AttachmentBlobRepository.class);
+        when(repository.findById(anyString())).thenAnswer(i -> Optional.ofNullable(stored.get(i.<String>getArgument(0))));
+        when(repository.save(any(AttachmentBlob.class))).thenAnswer(i -> {
+            AttachmentBlob blob = i.getArgument(0);
+            stored.put(blob.getId(), blob);
+            return blob;
+        });
+        service = new AttachmentService(repository, directory.toString(), 1024);
+    }
+
+    @Test
+    void imageTypeComesFromTheBytesNotTheClient() throws IOException {
+        assertThat(store(PNG, "text/html").getContentType()).isEqualTo("image/png");
+        assertThat(store(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 0x01}, null).getContentType())
+                .isEqualTo("image/jpeg");
+        assertThat(store("GIF89a....".getBytes(StandardCharsets.US_ASCII), "application/json").getContentType())
+                .isEqualTo("image/gif");
+        assertThat(store("RIFF\0\0\0\0WEBPVP8 ".getBytes(StandardCharsets.US_ASCII), null).getContentType())
+                .isEqualTo("image/webp");
+    }
+
+    @Test
+    void claimedImagesThatAreNotImagesAreOpaque() throws IOException {
+        assertThat(store(HTML, "image/png").getContentType()).isEqualTo("application/octet-stream");
+        assertThat(store("<svg onload=alert(1)/>".getBytes(StandardCharsets.UTF_8), "image/svg+xml").getContentType())
+                .isEqualTo("application/octet-stream");
+        assertThat(store("x".getBytes(StandardCharsets.UTF_8), "not a type").getContentType())
+                .isEqualTo("application/octet-stream");
+        assertThat(store("%PDF-1.7".getBytes(StandardCharsets.US_ASCII), "application/pdf; charset=binary")
+                .getContentType()).isEqualTo("application/pdf");
+    }
+
+    @Test
+    void reuploadingTheSameBytesReturnsTheSameBlob() throws IOException {
+        AttachmentBlob first = store(PNG, "image/png");
+        AttachmentBlob second = store(PNG, "text/html");
+
+        assertThat(second.getId()).isEqualTo(first.getId());
+        assertThat(second.getContentType()).isEqualTo("image/png");
+        assertThat(Files.readAllBytes(service.pathFor(first.getId()))).isEqualTo(PNG);
+        assertThat(stored).hasSize(1);
+    }
+
+    @Test
+    void oversizedUploadsLeaveNothingBehind() throws IOException {
+        assertThatThrownBy(() -> store(new byte[2048], null)).hasMessageContaining("maximum size");
+        try (var files = Files.walk(directory)) {
+            assertThat(files.filter(Files::isRegularFile)).isEmpty();
+        }
+    }
+
+    @Test
+    void onlyRasterImagesAreInlineSafe() {
+        assertThat(AttachmentService.isInlineSafe("image/png")).isTrue();
+        assertThat(AttachmentService.isInlineSafe("image/webp")).isTrue();
+        assertThat(AttachmentService.isInlineSafe("image/svg+xml")).isFalse();
+        assertThat(AttachmentService.isInlineSafe("text/html")).isFalse();
+        assertThat(AttachmentService.isInlineSafe(null)).isFalse();
+    }
+
+    private AttachmentBlob store(byte[] content, String declaredType) throws IOException {
+        return service.store(new ByteArrayInputStream(content), declaredType, "u1");
+    }
+}
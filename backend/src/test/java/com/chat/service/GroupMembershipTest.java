@@ -0,0 +1,137 @@
+package com.chat.service;
+
+import com.chat.dispatch.SendDeduplicator;
+import com.chat.model.Conversation;
+import com.chat.model.Group;
+import com.chat.model.User;
+import com.chat.repository.*;
+import com.chat.retention.RetentionPolicy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class GroupMembershipTest {
+
+    private UserRepository userRepository;
+    private GroupRepository groupRepository;
+    private MongoTemplate mongoTemplate;
+    private InboxService inboxService;
+    private ChatService chatService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        groupRepository = mock(GroupRepository.class);
+        mongoTemplate = mock(MongoTemplate.class);
+        inboxService = mock(InboxService.class);
+        chatService = new ChatService(mock(MessageRepository.class), mock(ConversationRepository.class),
+                userRepository, groupRepository, mock(ReadReceiptService.class), mongoTemplate,
+                mock(AttachmentService.class), mock(RetentionPolicy.class), inboxService,
+                mock(SendDeduplicator.class));
+
+        Group group = Group.builder()
+                .id("g1")
+                .conversationId("conv-1")
+                .admins(new ArrayList<>(List.of("admin")))
+                .members(new ArrayList<>(List.of(Group.GroupMember.builder().userId("admin").build())))
+                .build();
+        when(groupRepository.findMembershipById("g1")).thenReturn(Optional.of(group));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Group.class))).thenReturn(group);
+        when(userRepository.findUsernamesByIdIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> User.builder().id(id).username("name-" + id).build()).toList();
+        });
+    }
+
+    // The database work for a bulk add is the same three round trips whatever the batch size;
+    // only the payload grows. Prints the service-side cost per size as a rough latency baseline.
+    @ParameterizedTest
+    @ValueSource(ints = {10, 1_000, 10_000})
+    void bulkAddCostsConstantRoundTrips(int size) {
+        List<String> userIds = userIds(size);
+
+        long started = System.nanoTime();
+        chatService.addMembersToGroup("g1", userIds);
+        long elapsed = System.nanoTime() - started;
+        System.out.printf("addMembersToGroup(%d): %.2f ms%n", size, elapsed / 1e6);
+
+        verify(userRepository, times(1)).findUsernamesByIdIn(anyCollection());
+        verify(mongoTemplate, times(1)).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(Group.class));
+        verify(mongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class), eq(Conversation.class));
+        verify(inboxService).onMembersAdded(eq("conv-1"), argThat(ids -> ids.size() == size));
+        verifyNoMoreInteractions(mongoTemplate);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {10, 1_000, 10_000})
+    void bulkRemoveCostsConstantRoundTrips(int size) {
+        List<String> userIds = userIds(size);
+
+        long started = System.nanoTime();
+        chatService.removeMembersFromGroup("g1", userIds, "admin");
+        long elapsed = System.nanoTime() - started;
+        System.out.printf("removeMembersFromGroup(%d): %.2f ms%n", size, elapsed / 1e6);
+
+        verify(mongoTemplate, times(1)).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(Group.class));
+        verify(mongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class), eq(Conversation.class));
+        verify(inboxService).onMembersRemoved("conv-1", userIds);
+        verifyNoMoreInteractions(mongoTemplate);
+    }
+
+    @Test
+    void existingMembersAreNotAddedAgain() {
+        chatService.addMembersToGroup("g1", List.of("admin", "u1", "u1"));
+
+        verify(userRepository).findUsernamesByIdIn(argThat(ids -> ids.size() == 1 && ids.contains("u1")));
+        verify(inboxService).onMembersAdded(eq("conv-1"), eq(List.of("u1")));
+    }
+
+    @Test
+    void malformedUserIdsAreRejectedBeforeAnyLookup() {
+        List<Object> mixed = new ArrayList<>(List.of("u1"));
+        mixed.add(42);
+        @SuppressWarnings("unchecked")
+        List<String> notStrings = (List<String>) (List<?>) mixed;
+
+        assertThatThrownBy(() -> chatService.addMembersToGroup("g1", null)).hasMessageContaining("userIds");
+        assertThatThrownBy(() -> chatService.addMembersToGroup("g1", List.of())).hasMessageContaining("userIds");
+        assertThatThrownBy(() -> chatService.addMembersToGroup("g1", notStrings)).hasMessageContaining("userIds");
+        assertThatThrownBy(() -> chatService.removeMembersFromGroup("g1", null, "admin"))
+                .hasMessageContaining("userIds");
+        assertThatThrownBy(() -> chatService.removeMembersFromGroup("g1", List.of("u1"), null))
+                .hasMessageContaining("requesterId");
+
+        verifyNoInteractions(groupRepository, userRepository, mongoTemplate, inboxService);
+    }
+
+    @Test
+    void nonAdminsCanOnlyRemoveThemselves() {
+        assertThatThrownBy(() -> chatService.removeMembersFromGroup("g1", List.of("u1", "u2"), "u1"))
+                .hasMessage("Only admins can remove members");
+
+        chatService.removeMembersFromGroup("g1", List.of("u1"), "u1");
+        verify(inboxService).onMembersRemoved("conv-1", List.of("u1"));
+    }
+
+    private static List<String> userIds(int size) {
+        List<String> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add("user-" + i);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,203 @@
+package com.chat.service;
+
+import com.chat.model.Conversation;
+import com.chat.model.InboxEntry;
+import com.chat.model.User;
+import com.chat.repository.ConversationRepository;
+import com.chat.repository.InboxEntryRepository;
+import com.chat.repository.UserRepository;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class InboxServiceTest {
+
+    private InboxEntryRepository inboxEntryRepository;
+    private ConversationRepository conversationRepository;
+    private UserRepository userRepository;
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulk;
+    private InboxService inboxService;
+
+    @BeforeEach
+    void setUp() {
+        inboxEntryRepository = mock(InboxEntryRepository.class);
+        conversationRepository = mock(ConversationRepository.class);
+        userRepository = mock(UserRepository.class);
+        mongoTemplate = mock(MongoTemplate.class);
+        bulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(InboxEntry.class))).thenReturn(bulk);
+        inboxService = new InboxService(inboxEntryRepository, conversationRepository, userRepository, mongoTemplate);
+    }
+
+    @Test
+    void firstReadBuildsTheInboxOfAUserWhoHasNone() {
+        InboxEntry built = InboxEntry.builder().id("u1:c1").userId("u1").conversationId("c1").build();
+        when(inboxEntryRepository.findByUserIdAndRemovedFalseOrderByUpdatedAtDesc("u1")).thenReturn(List.of(built));
+        when(conversationRepository.findByParticipantsContainingOrderByUpdatedAtDesc("u1")).thenReturn(List.of(
+                Conversation.builder().id("c1").type(Conversation.ConversationType.PRIVATE)
+                        .participants(List.of("u1", "u2")).build(),
+                Conversation.builder().id("c2").type(Conversation.ConversationType.GROUP)
+                        .participants(List.of("u1", "u2", "u3")).groupName("Team").build()));
+        when(userRepository.findProfilesByIdIn(anyCollection())).thenReturn(List.of(
+                User.builder().id("u2").username("bob").build()));
+
+        Map<String, Object> inbox = inboxService.getInbox("u1");
+
+        assertThat(inbox.get("entries")).isEqualTo(List.of(built));
+        ArgumentCaptor<Object> rows = ArgumentCaptor.forClass(Object.class);
+        verify(bulk, times(2)).replaceOne(any(Query.class), rows.capture(), any(FindAndReplaceOptions.class));
+        assertThat(rows.getAllValues()).map(InboxEntry.class::cast)
+                .extracting(InboxEntry::getId, InboxEntry::getTitle)
+                .containsExactly(tuple("u1:c1", "bob"), tuple("u1:c2", "Team"));
+        verify(bulk).execute();
+        verify(mongoTemplate).upsert(any(Query.class), any(UpdateDefinition.class), eq(InboxService.STATE_COLLECTION));
+    }
+
+    @Test
+    void aUserWithOneNewRowStillGetsOlderConversationsBackfilled() {
+        // A DM arrived through the write-side fan-out before the user ever loaded the inbox
+        InboxEntry fresh = InboxEntry.builder().id("u1:c2").userId("u1").conversationId("c2").build();
+        when(inboxEntryRepository.findByUserIdAndRemovedFalseOrderByUpdatedAtDesc("u1")).thenReturn(List.of(fresh));
+        when(conversationRepository.findByParticipantsContainingOrderByUpdatedAtDesc("u1")).thenReturn(List.of(
+                Conversation.builder().id("c1").type(Conversation.ConversationType.GROUP)
+                        .participants(List.of("u1", "u3")).groupName("Old").build(),
+                Conversation.builder().id("c2").type(Conversation.ConversationType.GROUP)
+                        .participants(List.of("u1", "u2")).groupName("New").build()));
+
+        inboxService.getInbox("u1");
+
+        ArgumentCaptor<Object> rows = ArgumentCaptor.forClass(Object.class);
+        verify(bulk, times(2)).replaceOne(any(Query.class), rows.capture(), any(FindAndReplaceOptions.class));
+        assertThat(rows.getAllValues()).map(InboxEntry.class::cast)
+                .extracting(InboxEntry::getConversationId)
+                .containsExactly("c1", "c2");
+    }
+
+    @Test
+    void aBuiltInboxIsNotRebuilt() {
+        when(mongoTemplate.exists(any(Query.class), eq(InboxService.STATE_COLLECTION))).thenReturn(true);
+        when(inboxEntryRepository.findByUserIdAndRemovedFalseOrderByUpdatedAtDesc("u1")).thenReturn(List.of());
+
+        assertThat(inboxService.getInbox("u1").get("entries")).isEqualTo(List.of());
+        inboxService.getInbox("u1");
+
+        verifyNoInteractions(conversationRepository, bulk);
+        // Known to be built after the first load, so the marker is read once
+        verify(mongoTemplate, times(1)).exists(any(Query.class), eq(InboxService.STATE_COLLECTION));
+    }
+
+    @Test
+    void inboxVersionIsTakenBeforeTheRowsAreRead() {
+        when(mongoTemplate.exists(any(Query.class), eq(InboxService.STATE_COLLECTION))).thenReturn(true);
+        AtomicLong versionWhileReading = new AtomicLong();
+        when(inboxEntryRepository.findByUserIdAndRemovedFalseOrderByUpdatedAtDesc("u1")).thenAnswer(i -> {
+            // A write lands while the rows are being read
+            inboxService.onRead("c1", "u1");
+            versionWhileReading.set(inboxService.safeVersion());
+            return List.of();
+        });
+
+        long version = (Long) inboxService.getInbox("u1").get("version");
+
+        // The write is above the returned version, so the next changes read includes it
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(InboxEntry.class));
+        long written = update.getValue().getUpdateObject().get("$set", Document.class).getLong("version");
+        assertThat(written).isGreaterThan(version);
+        assertThat(versionWhileReading.get()).isGreaterThanOrEqualTo(written);
+    }
+
+    @Test
+    void changesStopBelowAWriteStillInFlight() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicLong slowVersion = new AtomicLong();
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(InboxEntry.class)))
+                .thenAnswer(i -> {
+                    slowVersion.set(versionOf(i.getArgument(1)));
+                    writing.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return UpdateResult.acknowledged(1, 1L, null);
+                });
+
+        Thread slowWrite = new Thread(() -> inboxService.onProfileUpdated(User.builder().id("u2").username("bob").build()));
+        slowWrite.start();
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // A later write commits first, with a higher version
+        inboxService.onRead("c1", "u1");
+        ArgumentCaptor<UpdateDefinition> read = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), read.capture(), eq(InboxEntry.class));
+        long readVersion = versionOf(read.getValue());
+        assertThat(readVersion).isGreaterThan(slowVersion.get());
+
+        inboxService.getChanges("u1", 0);
+        ArgumentCaptor<Long> upTo = ArgumentCaptor.forClass(Long.class);
+        verify(inboxEntryRepository).findChanges(eq("u1"), eq(0L), upTo.capture());
+        // Serving the read's version now would let the client step past the slow write
+        assertThat(upTo.getValue()).isLessThan(slowVersion.get());
+
+        release.countDown();
+        slowWrite.join(5000);
+        clearInvocations(inboxEntryRepository);
+        inboxService.getChanges("u1", 0);
+        verify(inboxEntryRepository).findChanges(eq("u1"), eq(0L), upTo.capture());
+        assertThat(upTo.getValue()).isGreaterThanOrEqualTo(readVersion);
+    }
+
+    @Test
+    void changesResponseAdvancesToTheLastChangeReturned() {
+        when(inboxEntryRepository.findChanges(eq("u1"), eq(5L), anyLong())).thenReturn(List.of(
+                InboxEntry.builder().id("u1:c1").version(7).build(),
+                InboxEntry.builder().id("u1:c2").version(9).build()));
+
+        Map<String, Object> changes = inboxService.getChanges("u1", 5);
+
+        assertThat(changes).containsEntry("version", 9L);
+    }
+
+    @Test
+    void repairedLastMessageSparesRowsANewerMessageReached() {
+        Instant observedAt = Instant.parse("2026-05-01T00:00:00Z");
+        Conversation.LastMessage survivor = Conversation.LastMessage.builder()
+                .content("still here").timestamp(observedAt.minusSeconds(3600)).build();
+
+        inboxService.onLastMessageRepaired("c1", survivor, observedAt);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateMulti(query.capture(), update.capture(), eq(InboxEntry.class));
+        Document filter = query.getValue().getQueryObject();
+        assertThat(filter.get("conversationId")).isEqualTo("c1");
+        assertThat(filter.getList("$or", Document.class)).containsExactly(
+                new Document("lastMessage", null),
+                new Document("lastMessage.timestamp", new Document("$lt", observedAt)));
+        Document set = update.getValue().getUpdateObject().get("$set", Document.class);
+        assertThat(set.get("lastMessage")).isEqualTo(survivor);
+        assertThat(set.getLong("version")).isPositive();
+    }
+
+    private static long versionOf(UpdateDefinition update) {
+        return update.getUpdateObject().get("$set", Document.class).getLong("version");
+    }
+}
@@ -0,0 +1,114 @@
+package com.chat.service;
+
+import com.chat.dto.ReadReceiptBatch;
+import com.chat.model.ReadWatermark;
+import com.chat.repository.ReadWatermarkRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReadReceiptServiceTest {
+
+    private ReadWatermarkRepository repository;
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulk;
+    private SimpMessagingTemplate messagingTemplate;
+    private ReadReceiptService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ReadWatermarkRepository.class);
+        mongoTemplate = mock(MongoTemplate.class);
+        bulk = mock(BulkOperations.class);
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(ReadWatermark.class))).thenReturn(bulk);
+        service = new ReadReceiptService(repository, mongoTemplate, Optional.of(messagingTemplate));
+    }
+
+    // Write cost is bounded by (conversation, reader) pairs per flush, not by messages read:
+    // 50 readers scrolling through 1,000 messages each cost 50 upserts and one round trip
+    @Test
+    void readsCoalesceIntoOneUpsertPerReaderPerFlush() {
+        Instant base = Instant.parse("2026-01-01T00:00:00Z");
+        for (int message = 0; message < 1000; message++) {
+            for (int reader = 0; reader < 50; reader++) {
+                service.markRead("c1", "user-" + reader, base.plusMillis(message));
+            }
+        }
+
+        service.flush();
+
+        verify(mongoTemplate, times(1)).bulkOps(BulkOperations.BulkMode.UNORDERED, ReadWatermark.class);
+        verify(bulk, times(50)).upsert(any(Query.class), any(Update.class));
+        verify(bulk, times(1)).execute();
+
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate, times(1)).convertAndSend(eq("/topic/conversation.c1"), payload.capture());
+        ReadReceiptBatch receipts = (ReadReceiptBatch) payload.getValue();
+        assertThat(receipts.getReceipts()).hasSize(50)
+                .allSatisfy(r -> assertThat(r.getLastReadAt()).isEqualTo(base.plusMillis(999)));
+
+        service.flush();
+        verifyNoMoreInteractions(bulk);
+    }
+
+    @Test
+    void olderReadNeverReplacesNewerPendingWatermark() {
+        Instant newer = Instant.parse("2026-01-01T00:00:10Z");
+        service.markRead("c1", "u1", newer);
+        service.markRead("c1", "u1", newer.minusSeconds(5));
+
+        assertThat(service.getWatermarks("c1")).singleElement()
+                .satisfies(w -> assertThat(w.getLastReadAt()).isEqualTo(newer));
+        assertThat(service.getSeenBy("c1", newer)).containsExactly("u1");
+    }
+
+    @Test
+    void broadcastsOneBatchPerConversation() {
+        Instant now = Instant.now();
+        service.markRead("c1", "u1", now);
+        service.markRead("c1", "u2", now);
+        service.markRead("c2", "u1", now);
+
+        service.flush();
+
+        verify(bulk, times(3)).upsert(any(Query.class), any(Update.class));
+        verify(messagingTemplate).convertAndSend(eq("/topic/conversation.c1"), any(ReadReceiptBatch.class));
+        verify(messagingTemplate).convertAndSend(eq("/topic/conversation.c2"), any(ReadReceiptBatch.class));
+        verifyNoMoreInteractions(messagingTemplate);
+    }
+
+    @Test
+    void failedFlushKeepsWatermarksForTheNextAttempt() {
+        Instant now = Instant.now();
+        service.markRead("c1", "u1", now);
+        when(bulk.execute()).thenThrow(new RuntimeException("primary stepped down"));
+
+        service.flush();
+
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+        assertThat(service.getWatermarks("c1")).singleElement()
+                .satisfies(w -> assertThat(w.getLastReadAt()).isEqualTo(now));
+
+        reset(bulk);
+        service.flush();
+        verify(bulk).upsert(any(Query.class), any(Update.class));
+        verify(bulk).execute();
+        verify(messagingTemplate).convertAndSend(eq("/topic/conversation.c1"), any(ReadReceiptBatch.class));
+    }
+}
@@ -0,0 +1,78 @@
+package com.chat.wal;
+
+import com.chat.dto.SendCorrection;
+import com.chat.model.Message;
+import com.chat.service.ChatService;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WalReplicatorTest {
+
+    @Test
+    void unreplicatedEntriesAreRememberedBeforeSendsAreAccepted() throws Exception {
+        WriteAheadLog writeAheadLog = mock(WriteAheadLog.class);
+        ChatService chatService = mock(ChatService.class);
+        Message pending = Message.builder().id("m1").senderId("u1").clientMessageId("cm-1").build();
+        doAnswer(i -> {
+            i.<Consumer<WriteAheadLog.WalEntry>>getArgument(0).accept(new WriteAheadLog.WalEntry(7, pending));
+            return null;
+        }).when(writeAheadLog).forEachUnreplicated(any());
+        when(writeAheadLog.drain(anyInt(), anyLong())).thenAnswer(i -> {
+            Thread.sleep(10);
+            return List.of();
+        });
+
+        WalReplicator replicator = new WalReplicator(writeAheadLog, chatService, mock(SimpMessagingTemplate.class), 16);
+        replicator.start();
+        try {
+            // Seeding happens in start() itself, before the application takes any sends
+            verify(chatService).rememberSend(pending);
+        } finally {
+            replicator.stop();
+        }
+    }
+
+    @Test
+    void duplicateRejectedByTheIndexIsCorrectedOnTheConversationTopic() throws Exception {
+        WriteAheadLog writeAheadLog = mock(WriteAheadLog.class);
+        ChatService chatService = mock(ChatService.class);
+        SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+        Message duplicate = Message.builder().id("dup-1").conversationId("c1").senderId("u1").clientMessageId("cm-1").build();
+        Message fresh = Message.builder().id("m2").conversationId("c1").senderId("u1").clientMessageId("cm-2").build();
+        Message original = Message.builder().id("orig").conversationId("c1").senderId("u1").clientMessageId("cm-1")
+                .content("hello").build();
+        when(chatService.persistMessageIfAbsent(duplicate)).thenReturn(Optional.of(original));
+        when(writeAheadLog.drain(anyInt(), anyLong()))
+                .thenReturn(List.of(new WriteAheadLog.WalEntry(1, duplicate), new WriteAheadLog.WalEntry(2, fresh)))
+                .thenAnswer(i -> {
+                    Thread.sleep(10);
+                    return List.of();
+                });
+
+        WalReplicator replicator = new WalReplicator(writeAheadLog, chatService, messagingTemplate, 16);
+        replicator.start();
+        try {
+            verify(writeAheadLog, timeout(1000)).markReplicated(2);
+        } finally {
+            replicator.stop();
+        }
+
+        verify(chatService).persistMessageIfAbsent(fresh);
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate).convertAndSend(eq("/topic/conversation.c1"), payload.capture());
+        SendCorrection correction = (SendCorrection) payload.getValue();
+        assertThat(correction.getType()).isEqualTo(SendCorrection.TYPE);
+        assertThat(correction.getDuplicateId()).isEqualTo("dup-1");
+        assertThat(correction.getOriginal().getId()).isEqualTo("orig");
+        assertThat(correction.getOriginal().getContent()).isEqualTo("hello");
+    }
+}
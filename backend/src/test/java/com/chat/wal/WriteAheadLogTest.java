@@ -0,0 +1,170 @@
+package com.chat.wal;
+
+import com.chat.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteAheadLogTest {
+
+    private static final long SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversEveryCompleteRecordAfterCrashMidAppend() throws IOException, InterruptedException {
+        WriteAheadLog wal = open(100);
+        List<String> acknowledged = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            acknowledged.add(wal.append(message(i)).message().getId());
+        }
+
+        // The process dies while writing the next record: its header and part of the
+        // payload reach the file, and close() never runs
+        Path segment = singleSegment();
+        long sizeBeforeCrash = Files.size(segment);
+        tornRecord(segment, 51);
+        assertThat(Files.size(segment)).isGreaterThan(sizeBeforeCrash);
+
+        WriteAheadLog recovered = open(100);
+        assertThat(Files.size(segment)).isEqualTo(sizeBeforeCrash);
+
+        List<WriteAheadLog.WalEntry> replayed = drainAll(recovered);
+        assertThat(replayed).extracting(WriteAheadLog.WalEntry::seq)
+                .containsExactlyElementsOf(seqs(1, 50));
+        assertThat(replayed).extracting(e -> e.message().getId())
+                .containsExactlyElementsOf(acknowledged);
+
+        // Appends after recovery continue the sequence on a clean record boundary
+        WriteAheadLog.WalEntry next = recovered.append(message(50));
+        assertThat(next.seq()).isEqualTo(51);
+        recovered.close();
+
+        List<WriteAheadLog.WalEntry> afterRestart = drainAll(open(100));
+        assertThat(afterRestart).hasSize(51);
+        assertThat(new HashSet<>(afterRestart.stream().map(e -> e.message().getId()).toList())).hasSize(51);
+        assertThat(afterRestart.get(50).message().getId()).isEqualTo(next.message().getId());
+    }
+
+    @Test
+    void replicatedEntriesAreNotReplayed() throws IOException, InterruptedException {
+        WriteAheadLog wal = open(100);
+        for (int i = 0; i < 10; i++) {
+            wal.append(message(i));
+        }
+        assertThat(drainAll(wal)).hasSize(10);
+        wal.markReplicated(6);
+        wal.close();
+
+        WriteAheadLog recovered = open(100);
+        assertThat(recovered.unreplicatedCount()).isEqualTo(4);
+        assertThat(drainAll(recovered)).extracting(WriteAheadLog.WalEntry::seq)
+                .containsExactly(7L, 8L, 9L, 10L);
+    }
+
+    @Test
+    void overflowingTheBufferReadsEntriesBackFromDisk() throws IOException, InterruptedException {
+        WriteAheadLog wal = open(4);
+        for (int i = 0; i < 20; i++) {
+            wal.append(message(i));
+        }
+
+        List<WriteAheadLog.WalEntry> drained = drainAll(wal);
+        assertThat(drained).extracting(WriteAheadLog.WalEntry::seq).containsExactlyElementsOf(seqs(1, 20));
+        assertThat(drained).extracting(e -> e.message().getContent())
+                .containsExactlyElementsOf(Stream.iterate(0, i -> i + 1).limit(20).map(i -> "message " + i).toList());
+
+        // Once caught up, new entries are served from memory again
+        wal.append(message(20));
+        assertThat(drainAll(wal)).extracting(WriteAheadLog.WalEntry::seq).containsExactly(21L);
+    }
+
+    @Test
+    void recoveryBeyondTheBufferStillReplaysEverything() throws IOException, InterruptedException {
+        WriteAheadLog wal = open(1000);
+        for (int i = 0; i < 30; i++) {
+            wal.append(message(i));
+        }
+        wal.close();
+
+        WriteAheadLog recovered = open(3);
+        assertThat(drainAll(recovered)).extracting(WriteAheadLog.WalEntry::seq)
+                .containsExactlyElementsOf(seqs(1, 30));
+
+        List<Long> streamed = new ArrayList<>();
+        recovered.forEachUnreplicated(entry -> streamed.add(entry.seq()));
+        assertThat(streamed).containsExactlyElementsOf(seqs(1, 30));
+    }
+
+    private WriteAheadLog open(int maxBuffered) throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(objectMapper, directory.toString(), SEGMENT_BYTES, maxBuffered);
+        wal.open();
+        return wal;
+    }
+
+    private static List<WriteAheadLog.WalEntry> drainAll(WriteAheadLog wal) throws InterruptedException {
+        List<WriteAheadLog.WalEntry> all = new ArrayList<>();
+        List<WriteAheadLog.WalEntry> batch;
+        while (!(batch = wal.drain(8, 10)).isEmpty()) {
+            all.addAll(batch);
+        }
+        return all;
+    }
+
+    private Path singleSegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.filter(p -> p.getFileName().toString().startsWith("wal-")).toList();
+            assertThat(segments).hasSize(1);
+            return segments.get(0);
+        }
+    }
+
+    // A header claiming a 200-byte payload followed by only 30 bytes of it
+    private static void tornRecord(Path segment, long seq) throws IOException {
+        ByteBuffer torn = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + Long.BYTES + 30);
+        torn.putInt(200).putLong(seq).putLong(12345L);
+        torn.put(new byte[30]);
+        torn.flip();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (torn.hasRemaining()) {
+                channel.write(torn);
+            }
+        }
+    }
+
+    private static Message message(int i) {
+        return Message.builder()
+                .conversationId("conversation-1")
+                .senderId("user-1")
+                .content("message " + i)
+                .messageType(Message.MessageType.TEXT)
+                .timestamp(Instant.now())
+                .build();
+    }
+
+    private static List<Long> seqs(long from, long to) {
+        List<Long> seqs = new ArrayList<>();
+        for (long seq = from; seq <= to; seq++) {
+            seqs.add(seq);
+        }
+        return seqs;
+    }
+}
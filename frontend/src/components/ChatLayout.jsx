@@ -1,6 +1,6 @@
-import { useState, useEffect, useCallback } from 'react';
+import { useState, useEffect, useCallback, useRef } from 'react';
 import { wsService } from '../services/websocket';
-import { conversationApi, userApi } from '../services/api';
+import { conversationApi, inboxApi, userApi } from '../services/api';
 import Sidebar from './Sidebar';
 import ChatWindow from './ChatWindow';
 import CreateGroupModal from './CreateGroupModal';
@@ -11,15 +11,59 @@ export default function ChatLayout({ currentUser, onLogout }) {
   const [users, setUsers] = useState([]);
   const [isConnected, setIsConnected] = useState(false);
   const [showCreateGroup, setShowCreateGroup] = useState(false);
+  const inboxVersionRef = useRef(0);
+
+  // Inbox rows carry everything the sidebar needs; map them onto the conversation shape
+  const fromInboxEntry = useCallback((entry) => ({
+    id: entry.conversationId,
+    type: entry.type,
+    groupName: entry.title,
+    groupAvatar: entry.avatar,
+    participants: entry.participants,
+    memberCount: entry.memberCount,
+    lastMessage: entry.lastMessage,
+    unreadCount: { [currentUser.id]: entry.unreadCount },
+    updatedAt: entry.updatedAt,
+  }), [currentUser.id]);
 
   const loadConversations = useCallback(async () => {
     try {
-      const res = await conversationApi.getUserConversations(currentUser.id);
-      setConversations(res.data || []);
+      const res = await inboxApi.get(currentUser.id);
+      const { version = 0, entries = [] } = res.data || {};
+      // Rows can be older than writes already committed; resume changes from the server's version
+      inboxVersionRef.current = version;
+      setConversations(entries.map(fromInboxEntry));
     } catch (err) {
       console.error('Failed to load conversations:', err);
     }
-  }, [currentUser.id]);
+  }, [currentUser.id, fromInboxEntry]);
+
+  // Pull only the rows that changed since the last read and merge them in
+  const refreshConversations = useCallback(async () => {
+    try {
+      const res = await inboxApi.getChanges(currentUser.id, inboxVersionRef.current);
+      const { version, changes = [] } = res.data || {};
+      if (changes.length === 0) {
+        return;
+      }
+      inboxVersionRef.current = version;
+      setConversations((prev) => {
+        const byId = new Map(prev.map((c) => [c.id, c]));
+        changes.forEach((entry) => {
+          if (entry.removed) {
+            byId.delete(entry.conversationId);
+          } else {
+            byId.set(entry.conversationId, { ...byId.get(entry.conversationId), ...fromInboxEntry(entry) });
+          }
+        });
+        return [...byId.values()].sort(
+          (a, b) => new Date(b.updatedAt || 0) - new Date(a.updatedAt || 0)
+        );
+      });
+    } catch (err) {
+      console.error('Failed to refresh conversations:', err);
+    }
+  }, [currentUser.id, fromInboxEntry]);
 
   const loadUsers = useCallback(async () => {
     try {
@@ -112,8 +156,8 @@ export default function ChatLayout({ currentUser, onLogout }) {
 
   const handleNewMessage = useCallback((conversationId) => {
     // Refresh conversations to update last message
-    loadConversations();
-  }, [loadConversations]);
+    refreshConversations();
+  }, [refreshConversations]);
 
   return (
     <div className="chat-layout">
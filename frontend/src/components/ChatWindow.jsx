@@ -1,36 +1,166 @@
 import { useState, useEffect, useRef, useCallback } from 'react';
 import { wsService } from '../services/websocket';
-import { messageApi } from '../services/api';
+import { messageApi, conversationApi, attachmentApi } from '../services/api';
 import { format } from 'date-fns';
-import { Send, Users, MessageCircle } from 'lucide-react';
+import { Send, Users, MessageCircle, Paperclip } from 'lucide-react';
+
+// Reading an open conversation moves the watermark at most this often
+const MARK_READ_THROTTLE_MS = 2000;
+
+// Messages can share a millisecond, so the history cursor carries the id as a tie-breaker
+const cursorOf = (chunk) =>
+  chunk.nextCursor ? { before: chunk.nextCursor, beforeId: chunk.nextCursorId } : null;
 
 export default function ChatWindow({ currentUser, conversation, isConnected, onNewMessage }) {
   const [messages, setMessages] = useState([]);
   const [newMessage, setNewMessage] = useState('');
   const [typingUsers, setTypingUsers] = useState([]);
+  const [readWatermarks, setReadWatermarks] = useState({});
   const [loading, setLoading] = useState(false);
+  const [historyCursor, setHistoryCursor] = useState(null);
   const messagesEndRef = useRef(null);
+  const containerRef = useRef(null);
+  const lastMessageIdRef = useRef(null);
+  const loadingOlderRef = useRef(false);
+  const historyRequestsRef = useRef(new Set());
   const typingTimeoutRef = useRef(null);
   const inputRef = useRef(null);
+  const fileInputRef = useRef(null);
+  const lastMarkedReadRef = useRef(0);
+  const markReadTimerRef = useRef(null);
+  const unreadWhileHiddenRef = useRef(false);
 
   const scrollToBottom = useCallback(() => {
     messagesEndRef.current?.scrollIntoView({ behavior: 'smooth' });
   }, []);
 
+  // Merges a history chunk (newest first) in front of what is already shown, skipping
+  // anything that also arrived live on the conversation topic
+  const prependChunk = useCallback((chunk) => {
+    setMessages((prev) => {
+      const seen = new Set(prev.map((m) => m.id));
+      const older = [...chunk.messages].reverse().filter((m) => !seen.has(m.id));
+      return [...older, ...prev];
+    });
+  }, []);
+
+  // Messages arriving while the conversation is on screen count as read; throttled so a busy
+  // chat sends one watermark update every few seconds rather than one per message
+  const markRead = useCallback(() => {
+    if (!conversation?.id) return;
+    if (document.visibilityState !== 'visible') {
+      unreadWhileHiddenRef.current = true;
+      return;
+    }
+    if (markReadTimerRef.current) return;
+
+    const send = () => {
+      markReadTimerRef.current = null;
+      lastMarkedReadRef.current = Date.now();
+      conversationApi.markAsRead(conversation.id, currentUser.id).catch(console.error);
+    };
+    const wait = MARK_READ_THROTTLE_MS - (Date.now() - lastMarkedReadRef.current);
+    if (wait <= 0) {
+      send();
+    } else {
+      markReadTimerRef.current = setTimeout(send, wait);
+    }
+  }, [conversation?.id, currentUser.id]);
+
+  useEffect(() => {
+    const handleVisibility = () => {
+      if (document.visibilityState === 'visible' && unreadWhileHiddenRef.current) {
+        unreadWhileHiddenRef.current = false;
+        markRead();
+      }
+    };
+    document.addEventListener('visibilitychange', handleVisibility);
+    return () => {
+      document.removeEventListener('visibilitychange', handleVisibility);
+      if (markReadTimerRef.current) {
+        clearTimeout(markReadTimerRef.current);
+        markReadTimerRef.current = null;
+      }
+      unreadWhileHiddenRef.current = false;
+    };
+  }, [markRead]);
+
+  const requestHistory = useCallback((cursor, onChunk) => {
+    const correlationId = wsService.requestHistory(conversation.id, cursor, (chunk) => {
+      if (chunk.last) {
+        historyRequestsRef.current.delete(correlationId);
+      }
+      onChunk(chunk);
+    });
+    if (correlationId) {
+      historyRequestsRef.current.add(correlationId);
+    }
+    return correlationId;
+  }, [conversation?.id]);
+
   const loadMessages = useCallback(async () => {
     if (!conversation?.id) return;
     
     setLoading(true);
+    const startedAt = performance.now();
+    let firstChunk = true;
+    const correlationId = requestHistory(null, (chunk) => {
+      if (firstChunk) {
+        firstChunk = false;
+        console.debug(`History: first chunk after ${Math.round(performance.now() - startedAt)}ms`);
+        setLoading(false);
+      }
+      prependChunk(chunk);
+      if (chunk.last) {
+        setHistoryCursor(cursorOf(chunk));
+      }
+    });
+
     try {
-      const res = await messageApi.getMessages(conversation.id);
-      // Messages come in descending order, reverse for display
-      setMessages((res.data || []).reverse());
+      if (!correlationId) {
+        // Not connected over STOMP; fall back to the REST history endpoint
+        const res = await messageApi.getMessages(conversation.id);
+        // Messages come in descending order, reverse for display
+        setMessages((res.data || []).reverse());
+        setLoading(false);
+      }
+      const watermarksRes = await conversationApi.getReadWatermarks(conversation.id);
+      setReadWatermarks(
+        Object.fromEntries((watermarksRes.data || []).map((w) => [w.userId, w.lastReadAt]))
+      );
     } catch (err) {
       console.error('Failed to load messages:', err);
-    } finally {
       setLoading(false);
     }
-  }, [conversation?.id]);
+  }, [conversation?.id, requestHistory, prependChunk]);
+
+  // Prefetch the next older page while the user is still scrolling up towards it
+  const loadOlder = useCallback(() => {
+    if (!historyCursor || loadingOlderRef.current) return;
+
+    loadingOlderRef.current = true;
+    requestHistory(historyCursor, (chunk) => {
+      const container = containerRef.current;
+      const previousHeight = container?.scrollHeight ?? 0;
+      prependChunk(chunk);
+      // Keep the viewport anchored on the message the user was looking at
+      requestAnimationFrame(() => {
+        if (container) {
+          container.scrollTop += container.scrollHeight - previousHeight;
+        }
+      });
+      if (chunk.last) {
+        setHistoryCursor(cursorOf(chunk));
+        loadingOlderRef.current = false;
+      }
+    });
+  }, [historyCursor, requestHistory, prependChunk]);
+
+  const handleScroll = (e) => {
+    if (e.currentTarget.scrollTop < 300) {
+      loadOlder();
+    }
+  };
 
   useEffect(() => {
     if (!conversation?.id || !isConnected) return;
@@ -42,8 +172,33 @@ export default function ChatWindow({ currentUser, conversation, isConnected, onN
     const messageSubscription = wsService.subscribeToConversation(
       conversation.id,
       (msg) => {
+        if (msg.type === 'READ_RECEIPTS') {
+          setReadWatermarks((prev) => {
+            const next = { ...prev };
+            msg.receipts.forEach((r) => {
+              next[r.userId] = r.lastReadAt;
+            });
+            return next;
+          });
+          return;
+        }
+
+        // A resend this server didn't recognise went out under its own ID; swap in the original
+        if (msg.type === 'SEND_CORRECTION') {
+          setMessages((prev) =>
+            prev.some((m) => m.id === msg.original.id)
+              ? prev.filter((m) => m.id !== msg.duplicateId)
+              : prev.map((m) => (m.id === msg.duplicateId ? msg.original : m))
+          );
+          return;
+        }
+
         console.log('Received message:', msg);
-        setMessages((prev) => [...prev, msg]);
+        // A retried send is echoed again with the original ID; show it once
+        setMessages((prev) => (msg.id && prev.some((m) => m.id === msg.id) ? prev : [...prev, msg]));
+        if (msg.senderId !== currentUser.id) {
+          markRead();
+        }
         onNewMessage?.(conversation.id);
       }
     );
@@ -81,13 +236,23 @@ export default function ChatWindow({ currentUser, conversation, isConnected, onN
 
     return () => {
       wsService.unsubscribeFromConversation(conversation.id);
+      historyRequestsRef.current.forEach((id) => wsService.cancelHistory(id));
+      historyRequestsRef.current.clear();
+      loadingOlderRef.current = false;
       setMessages([]);
       setTypingUsers([]);
+      setReadWatermarks({});
+      setHistoryCursor(null);
     };
-  }, [conversation?.id, isConnected, currentUser.id, loadMessages, onNewMessage]);
+  }, [conversation?.id, isConnected, currentUser.id, loadMessages, onNewMessage, markRead]);
 
+  // Only follow the bottom when a newer message arrives, not when older history is prepended
   useEffect(() => {
-    scrollToBottom();
+    const lastId = messages[messages.length - 1]?.id;
+    if (lastId !== lastMessageIdRef.current) {
+      lastMessageIdRef.current = lastId;
+      scrollToBottom();
+    }
   }, [messages, scrollToBottom]);
 
   const handleTyping = useCallback(() => {
@@ -140,6 +305,26 @@ export default function ChatWindow({ currentUser, conversation, isConnected, onN
     }
   };
 
+  const handleFileSelected = async (e) => {
+    const file = e.target.files?.[0];
+    e.target.value = '';
+    if (!file || !isConnected || !conversation?.id) return;
+
+    try {
+      const res = await attachmentApi.upload(file, currentUser.id);
+      wsService.sendMessage(
+        conversation.id,
+        currentUser.id,
+        currentUser.displayName || currentUser.username,
+        newMessage.trim(),
+        [res.data]
+      );
+      setNewMessage('');
+    } catch (err) {
+      console.error('Failed to upload attachment:', err);
+    }
+  };
+
   const handleKeyDown = (e) => {
     if (e.key === 'Enter' && !e.shiftKey) {
       e.preventDefault();
@@ -159,6 +344,14 @@ export default function ChatWindow({ currentUser, conversation, isConnected, onN
     );
   }
 
+  // A message counts as seen once another participant's read watermark has passed it
+  const isSeen = (msg) =>
+    msg.timestamp &&
+    Object.entries(readWatermarks).some(
+      ([userId, lastReadAt]) =>
+        userId !== currentUser.id && new Date(lastReadAt) >= new Date(msg.timestamp)
+    );
+
   const conversationName =
     conversation.type === 'GROUP'
       ? conversation.groupName
@@ -181,13 +374,13 @@ export default function ChatWindow({ currentUser, conversation, isConnected, onN
           <h2>{conversationName}</h2>
           {conversation.type === 'GROUP' && (
             <span className="member-count">
-              {conversation.participants?.length || 0} members
+              {conversation.memberCount ?? conversation.participants?.length ?? 0} members
             </span>
           )}
         </div>
       </header>
 
-      <div className="messages-container">
+      <div className="messages-container" ref={containerRef} onScroll={handleScroll}>
         {loading ? (
           <div className="empty-state">
             <p>Loading messages...</p>
@@ -207,11 +400,29 @@ export default function ChatWindow({ currentUser, conversation, isConnected, onN
               {msg.senderId !== currentUser.id && conversation.type === 'GROUP' && (
                 <span className="sender-name">{msg.senderName}</span>
               )}
-              <div className="message-content">{msg.content}</div>
+              {msg.content && <div className="message-content">{msg.content}</div>}
+              {msg.attachments?.map((a) => (
+                <a
+                  key={a.url}
+                  className="message-attachment"
+                  href={attachmentApi.urlFor(a)}
+                  target="_blank"
+                  rel="noreferrer"
+                >
+                  {a.type?.startsWith('image/') ? (
+                    <img src={attachmentApi.urlFor(a)} alt={a.name} />
+                  ) : (
+                    a.name
+                  )}
+                </a>
+              ))}
               <span className="message-time">
                 {msg.timestamp
                   ? format(new Date(msg.timestamp), 'HH:mm')
                   : ''}
+                {msg.senderId === currentUser.id && idx === messages.length - 1 && isSeen(msg)
+                  ? ' · Seen'
+                  : ''}
               </span>
             </div>
           ))
@@ -232,6 +443,20 @@ export default function ChatWindow({ currentUser, conversation, isConnected, onN
       )}
 
       <form className="message-input" onSubmit={handleSend}>
+        <input
+          ref={fileInputRef}
+          type="file"
+          hidden
+          onChange={handleFileSelected}
+        />
+        <button
+          type="button"
+          onClick={() => fileInputRef.current?.click()}
+          disabled={!isConnected}
+          title="Attach file"
+        >
+          <Paperclip size={20} />
+        </button>
         <input
           ref={inputRef}
           type="text"
@@ -28,6 +28,14 @@ export const conversationApi = {
     api.post('/conversations/private', { user1Id, user2Id }),
   markAsRead: (conversationId, userId) =>
     api.put(`/conversations/${conversationId}/read`, { userId }),
+  getReadWatermarks: (conversationId) =>
+    api.get(`/conversations/${conversationId}/watermarks`),
+};
+
+// Inbox API
+export const inboxApi = {
+  get: (userId) => api.get(`/inbox/${userId}`),
+  getChanges: (userId, since) => api.get(`/inbox/${userId}/changes?since=${since}`),
 };
 
 // Message API
@@ -46,6 +54,24 @@ export const groupApi = {
     api.post(`/groups/${groupId}/members`, { userId }),
   removeMember: (groupId, userId, requesterId) =>
     api.delete(`/groups/${groupId}/members/${userId}?requesterId=${requesterId}`),
+  addMembers: (groupId, userIds) =>
+    api.post(`/groups/${groupId}/members/bulk`, { userIds }),
+  removeMembers: (groupId, userIds, requesterId) =>
+    api.post(`/groups/${groupId}/members/bulk-remove`, { userIds, requesterId }),
+};
+
+// Attachment API
+export const attachmentApi = {
+  // The file is sent as the raw request body so the server can stream it to disk
+  upload: (file, uploaderId) =>
+    api.post(
+      `/attachments?name=${encodeURIComponent(file.name)}&uploaderId=${uploaderId}`,
+      file,
+      { headers: { 'Content-Type': file.type || 'application/octet-stream' } }
+    ),
+  // The name only labels downloads; non-image attachments are always served as files
+  urlFor: (attachment) =>
+    `${API_URL.replace(/\/api$/, '')}${attachment.url}?name=${encodeURIComponent(attachment.name || '')}`,
 };
 
 // Health check
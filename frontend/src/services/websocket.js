@@ -1,11 +1,25 @@
 import { Client } from '@stomp/stompjs';
 import SockJS from 'sockjs-client';
 
+// Matches the server's dedup window; older sends are dropped rather than retried
+const PENDING_SEND_TTL_MS = 10 * 60 * 1000;
+
+function newClientMessageId() {
+  if (typeof crypto !== 'undefined' && crypto.randomUUID) {
+    return crypto.randomUUID();
+  }
+  return `${Date.now().toString(36)}-${Math.random().toString(36).slice(2, 12)}`;
+}
+
 class WebSocketService {
   constructor() {
     this.client = null;
     this.subscriptions = new Map();
     this.connectionPromise = null;
+    this.historyHandlers = new Map();
+    this.historySeq = 0;
+    // Sends not yet echoed back by the server, keyed by client message ID
+    this.pendingSends = new Map();
   }
 
   connect(userId, onConnected, onError) {
@@ -25,6 +39,8 @@ class WebSocketService {
         },
         onConnect: () => {
           console.log('WebSocket Connected for user:', userId);
+          this.subscribeToHistory();
+          this.resendPending();
           onConnected?.();
           resolve();
         },
@@ -68,6 +84,8 @@ class WebSocketService {
         }
       });
       this.subscriptions.clear();
+      this.historyHandlers.clear();
+      this.pendingSends.clear();
       this.client.deactivate();
       this.client = null;
       this.connectionPromise = null;
@@ -92,6 +110,9 @@ class WebSocketService {
       (message) => {
         try {
           const chatMessage = JSON.parse(message.body);
+          if (chatMessage.clientMessageId) {
+            this.pendingSends.delete(chatMessage.clientMessageId);
+          }
           onMessage(chatMessage);
         } catch (e) {
           console.error('Error parsing message:', e);
@@ -134,27 +155,89 @@ class WebSocketService {
     return subscription;
   }
 
-  sendMessage(conversationId, senderId, senderName, content) {
+  subscribeToHistory() {
+    const subscription = this.client.subscribe('/user/queue/history', (message) => {
+      try {
+        const chunk = JSON.parse(message.body);
+        const handler = this.historyHandlers.get(chunk.correlationId);
+        if (!handler) return;
+        if (chunk.last) {
+          this.historyHandlers.delete(chunk.correlationId);
+        }
+        handler(chunk);
+      } catch (e) {
+        console.error('Error parsing history chunk:', e);
+      }
+    });
+    this.subscriptions.set('history', subscription);
+  }
+
+  // Streams a page of history over the STOMP session. onChunk receives each chunk
+  // (messages newest first); the last one has last=true and nextCursor/nextCursorId for the
+  // next older page. cursor is { before, beforeId } from that chunk, or null for the newest.
+  requestHistory(conversationId, cursor, onChunk, { limit = 50, chunkSize = 25 } = {}) {
     if (!this.client?.connected) {
-      console.error('WebSocket not connected, cannot send message');
-      return false;
+      console.warn('WebSocket not connected, cannot request history');
+      return null;
     }
 
+    const correlationId = `history-${++this.historySeq}`;
+    this.historyHandlers.set(correlationId, onChunk);
     this.client.publish({
-      destination: '/app/chat.send',
+      destination: '/app/history',
       body: JSON.stringify({
+        correlationId,
         conversationId,
-        senderId,
-        senderName,
-        content,
-        type: 'CHAT',
+        before: cursor?.before ?? null,
+        beforeId: cursor?.beforeId ?? null,
+        limit,
+        chunkSize,
       }),
     });
+    return correlationId;
+  }
+
+  cancelHistory(correlationId) {
+    this.historyHandlers.delete(correlationId);
+  }
+
+  sendMessage(conversationId, senderId, senderName, content, attachments = []) {
+    if (!this.client?.connected) {
+      console.error('WebSocket not connected, cannot send message');
+      return false;
+    }
+
+    // The server deduplicates on (senderId, clientMessageId), so a send can be retried
+    // after a reconnect without creating a second message
+    const clientMessageId = newClientMessageId();
+    const body = JSON.stringify({
+      conversationId,
+      senderId,
+      senderName,
+      content,
+      attachments,
+      clientMessageId,
+      type: 'CHAT',
+    });
+    this.pendingSends.set(clientMessageId, { body, sentAt: Date.now() });
+    this.client.publish({ destination: '/app/chat.send', body });
     
-    console.log('Message sent:', { conversationId, senderId, content });
+    console.log('Message sent:', { conversationId, senderId, content, clientMessageId });
     return true;
   }
 
+  resendPending() {
+    const cutoff = Date.now() - PENDING_SEND_TTL_MS;
+    this.pendingSends.forEach((pending, clientMessageId) => {
+      if (pending.sentAt < cutoff) {
+        this.pendingSends.delete(clientMessageId);
+        return;
+      }
+      console.log('Resending unacknowledged message:', clientMessageId);
+      this.client.publish({ destination: '/app/chat.send', body: pending.body });
+    });
+  }
+
   sendTyping(conversationId, senderId, senderName) {
     if (!this.client?.connected) return;
 